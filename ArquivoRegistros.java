@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Arquivo de registros binários de tamanho fixo gravado por um mapeamento em memória:
+ * base dos gravadores de telemetria e de decisões do controle. Cada formato tem seu
+ * número mágico, versão e tamanho de registro (potência de 2); LeituraRegistros lê
+ * qualquer um deles.
+ *
+ * Formato (little-endian):
+ *
+ *   cabeçalho, 64 bytes: mágico (8), versão (4), tamanho do registro (4),
+ *                        número de registros gravados (8), reservado
+ *   registros, em seguida, um após o outro
+ *
+ * O arquivo é mapeado em trechos de REGISTROS_POR_TRECHO registros; quando um trecho
+ * enche, o próximo é mapeado (a única alocação, uma vez a cada 1M de registros). Só
+ * uma thread pode gravar. Para gravar: p = proximo(), escritas em trecho a partir de
+ * p, confirma().
+ *
+ * O número de registros do cabeçalho é atualizado a cada REGISTROS_POR_PUBLICACAO
+ * registros confirmados, e em fecha() e reinicia(), e não a cada registro: assim gravar um
+ * registro não custa uma escrita a mais no cabeçalho. Quem lê o arquivo enquanto ele é
+ * gravado (ou depois de o processo cair) vê até REGISTROS_POR_PUBLICACAO - 1 registros a
+ * menos, mas nunca um registro incompleto.
+ */
+public class ArquivoRegistros {
+
+    static final int CABECALHO = 64;
+    static final int REGISTROS_POR_TRECHO = 1 << 20;
+    static final int REGISTROS_POR_PUBLICACAO = 64; // potência de 2
+
+    // Posições dentro do cabeçalho
+    static final int POS_MAGICO = 0;
+    static final int POS_VERSAO = 8;
+    static final int POS_TAMANHO_REGISTRO = 12;
+    static final int POS_REGISTROS = 16;
+
+    final int tamanhoRegistro;
+    private final RandomAccessFile arquivo;
+    private final FileChannel canal;
+    private final MappedByteBuffer cabecalho;
+    protected MappedByteBuffer trecho;
+    private long inicioTrecho;   // índice do primeiro registro do trecho mapeado
+    private int posicao;         // byte do próximo registro dentro do trecho
+    private long registros = 0;
+
+    ArquivoRegistros(String caminho, long magico, int versao, int tamanhoRegistro) throws IOException {
+        this.tamanhoRegistro = tamanhoRegistro;
+        arquivo = new RandomAccessFile(caminho, "rw");
+        arquivo.setLength(0);
+        canal = arquivo.getChannel();
+        cabecalho = mapeia(0, CABECALHO);
+        cabecalho.putLong(POS_MAGICO, magico);
+        cabecalho.putInt(POS_VERSAO, versao);
+        cabecalho.putInt(POS_TAMANHO_REGISTRO, tamanhoRegistro);
+        cabecalho.putLong(POS_REGISTROS, 0);
+        mapeiaTrecho(0);
+    }
+
+    private MappedByteBuffer mapeia(long inicio, long tamanho) throws IOException {
+        MappedByteBuffer b = canal.map(FileChannel.MapMode.READ_WRITE, inicio, tamanho);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        return b;
+    }
+
+    private void mapeiaTrecho(long primeiroRegistro) {
+        try {
+            trecho = mapeia(CABECALHO + primeiroRegistro * tamanhoRegistro, (long) REGISTROS_POR_TRECHO * tamanhoRegistro);
+        } catch (IOException e) {
+            throw new IllegalStateException("Não foi possível estender o arquivo de registros", e);
+        }
+        inicioTrecho = primeiroRegistro;
+        posicao = 0;
+    }
+
+    /** Posição em trecho onde o próximo registro deve ser escrito. */
+    protected final int proximo() {
+        if (posicao == trecho.capacity()) mapeiaTrecho(registros);
+        return posicao;
+    }
+
+    /** Marca como gravado o registro escrito a partir de proximo(). */
+    protected final void confirma() {
+        posicao += tamanhoRegistro;
+        registros++;
+        // Depois do registro, para um leitor nunca ver um incompleto
+        if ((registros & (REGISTROS_POR_PUBLICACAO - 1)) == 0) cabecalho.putLong(POS_REGISTROS, registros);
+    }
+
+    long registros() {
+        return registros;
+    }
+
+    /** Volta ao início do arquivo, descartando o que foi gravado (usado pela bancada). */
+    void reinicia() {
+        registros = 0;
+        cabecalho.putLong(POS_REGISTROS, 0);
+        if (inicioTrecho != 0) mapeiaTrecho(0);
+        posicao = 0;
+    }
+
+    /** Grava as páginas pendentes e corta o arquivo no último registro. */
+    void fecha() throws IOException {
+        trecho.force();
+        cabecalho.putLong(POS_REGISTROS, registros);
+        cabecalho.force();
+        canal.truncate(CABECALHO + registros * tamanhoRegistro);
+        arquivo.close();
+    }
+}
@@ -0,0 +1,335 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bancada de medição do caminho crítico: mede o custo (ns/op) e a alocação (bytes/op)
+ * de cada ramo do switch de modos de logicaControle, de cada controleBombas_*, de um
+ * passo de física e de um ciclo completo (controle mais cinco passos de física), para
+ * vários níveis de água e combinações de falhas. Os casos "tabela*" medem a mesma
+ * decisão tirada de TabelaDecisao.
+ *
+ * Segue o esquema do JMH (aquecimento, iterações medidas, resultado consumido por um
+ * sorvedouro), mas sem dependências: as classes do projeto estão no pacote padrão, que
+ * o JMH não aceita. A alocação por operação vem do contador por thread da JVM
+ * (o mesmo usado pelo perfilador de GC do JMH) quando a JVM o oferece.
+ *
+ * O registro de eventos fica desligado nas medições da lógica; o custo de gravar um
+ * evento é medido à parte em "registraEvento", e o de atualizar as métricas de operação
+ * em "registraDecisaoMetricas" e "registraPassoMetricas".
+ */
+public class BancadaControle {
+
+    static final int ITERACOES_AQUECIMENTO = 3;
+    static final int ITERACOES_MEDIDAS = 5;
+    static final long DURACAO_ITERACAO_NS = 100000000L; // 100ms
+    static final int LOTE = 1024;
+
+    static final int[] NIVEIS = { 140, 300, 450, 550, 700, 860 };
+
+    // Combinações de falhas: bomba 1, bomba 2, sensor de água, sensor de vapor funcionando?
+    static final String[] NOMES_FALHAS = { "nenhuma", "bomba1", "sensorAgua", "bomba2+sensorAgua" };
+    static final boolean[][] FALHAS = {
+        { true, true, true, true },
+        { false, true, true, true },
+        { true, true, false, true },
+        { true, false, false, true },
+    };
+
+    // Sorvedouro: impede que o JIT elimine as operações medidas
+    static volatile int sorvedouro;
+
+    // Resultado da última iteração (campos em vez de um objeto, para não alocar durante a medição)
+    static long operacoesIteracao;
+    static long tempoIteracaoNs;
+
+    // Contador de bytes alocados por thread, quando a JVM oferece (null se não)
+    static final com.sun.management.ThreadMXBean CONTADOR_ALOCACAO = contadorAlocacao();
+
+    /** Uma operação medida. prepara() roda antes de cada iteração, fora da medição. */
+    abstract static class Bancada {
+        final String nome;
+        final boolean parametrizada;
+
+        Bancada(String nome, boolean parametrizada) {
+            this.nome = nome;
+            this.parametrizada = parametrizada;
+        }
+
+        void prepara(int nivel, boolean[] falhas) {
+        }
+
+        abstract int executa(int nivel, boolean[] falhas);
+    }
+
+    /** Coloca a caldeira estática de SteamBoilerControl no modo, nível e falhas dados. */
+    static int restauraEstado(SteamBoilerControl.Mode modo, int nivel, boolean[] falhas) {
+        int vapor = nivel < 200 ? 40 : nivel > 800 ? 80 : SteamBoilerControl.V;
+        long bits = (falhas[0] ? EstadoCaldeira.FUNCIONA_BOMBA1 : 0)
+                  | (falhas[1] ? EstadoCaldeira.FUNCIONA_BOMBA2 : 0)
+                  | (falhas[2] ? EstadoCaldeira.FUNCIONA_SENSOR_AGUA : 0)
+                  | (falhas[3] ? EstadoCaldeira.FUNCIONA_SENSOR_VAPOR : 0);
+        SteamBoilerControl.estado.set(EstadoCaldeira.comEstimativa(  // bombas desligadas, estimativa exata
+                EstadoCaldeira.empacota(nivel, vapor, bits), nivel, 0));
+        SteamBoilerControl.carregaEstado(); // para os controleBombas_*, chamados sem logicaControle
+        SteamBoilerControl.atualModo = modo;
+        SteamBoilerControl.ciclosEstabilizacao = 2; // o próximo ciclo de inicialização decide o modo
+        SteamBoilerControl.ciclosModoEmergencia = 1;
+        return nivel;
+    }
+
+    static int saida() {
+        return EstadoCaldeira.nivel(SteamBoilerControl.estado.get()) + SteamBoilerControl.atualModo.ordinal()
+             + (SteamBoilerControl.ligadaBomba1 ? 2 : 0) + (SteamBoilerControl.ligadaBomba2 ? 1 : 0);
+    }
+
+    static Bancada modo(final SteamBoilerControl.Mode modo) {
+        return new Bancada("modo" + modo, true) {
+            int executa(int nivel, boolean[] falhas) {
+                restauraEstado(modo, nivel, falhas);
+                SteamBoilerControl.logicaControle();
+                return saida();
+            }
+        };
+    }
+
+    static Bancada modoTabela(final SteamBoilerControl.Mode modo) {
+        return new Bancada("tabela" + modo, true) {
+            int executa(int nivel, boolean[] falhas) {
+                restauraEstado(modo, nivel, falhas);
+                SteamBoilerControl.logicaControleTabela();
+                return saida();
+            }
+        };
+    }
+
+    static Bancada[] bancadas() {
+        return new Bancada[] {
+            new Bancada("restauraEstado", true) { // custo de base, incluso nas demais
+                int executa(int nivel, boolean[] falhas) {
+                    return restauraEstado(SteamBoilerControl.Mode.NORMAL, nivel, falhas);
+                }
+            },
+            modo(SteamBoilerControl.Mode.INICIALIZACAO),
+            modo(SteamBoilerControl.Mode.NORMAL),
+            modo(SteamBoilerControl.Mode.DEGRADADO),
+            modo(SteamBoilerControl.Mode.SALVAMENTO),
+            modo(SteamBoilerControl.Mode.PARADA_EMERGENCIA),
+            modoTabela(SteamBoilerControl.Mode.INICIALIZACAO),
+            modoTabela(SteamBoilerControl.Mode.NORMAL),
+            modoTabela(SteamBoilerControl.Mode.DEGRADADO),
+            modoTabela(SteamBoilerControl.Mode.SALVAMENTO),
+            modoTabela(SteamBoilerControl.Mode.PARADA_EMERGENCIA),
+            new Bancada("controleBombas_TudoBem", true) {
+                int executa(int nivel, boolean[] falhas) {
+                    restauraEstado(SteamBoilerControl.Mode.NORMAL, nivel, falhas);
+                    SteamBoilerControl.controleBombas_TudoBem();
+                    return saida();
+                }
+            },
+            new Bancada("controleBombas_BombaComFalha", true) {
+                int executa(int nivel, boolean[] falhas) {
+                    restauraEstado(SteamBoilerControl.Mode.DEGRADADO, nivel, falhas);
+                    SteamBoilerControl.controleBombas_BombaComFalha();
+                    return saida();
+                }
+            },
+            new Bancada("controleBombas_SemSensor", true) {
+                int executa(int nivel, boolean[] falhas) {
+                    restauraEstado(SteamBoilerControl.Mode.SALVAMENTO, nivel, falhas);
+                    SteamBoilerControl.controleBombas_SemSensor();
+                    return saida();
+                }
+            },
+            new Bancada("passoFisica", true) {
+                int executa(int nivel, boolean[] falhas) {
+                    restauraEstado(SteamBoilerControl.Mode.NORMAL, nivel, falhas);
+                    SteamBoilerControl.estado.set(SteamBoilerControl.estado.get() | EstadoCaldeira.LIGADA_BOMBA1);
+                    SteamBoilerControl.atualizaSistemaFisico();
+                    return saida();
+                }
+            },
+            new Bancada("cicloCompleto", true) {
+                int executa(int nivel, boolean[] falhas) {
+                    restauraEstado(SteamBoilerControl.Mode.NORMAL, nivel, falhas);
+                    SteamBoilerControl.logicaControle();
+                    for (int tick = 0; tick < 5; tick++) {
+                        SteamBoilerControl.atualizaSistemaFisico();
+                    }
+                    return saida();
+                }
+            },
+            new Bancada("frotaCicloPorCaldeira", false) { // 1024 caldeiras, resultado dividido por 1024
+                final FrotaCaldeiras frota = new FrotaCaldeiras(1024);
+
+                void prepara(int nivel, boolean[] falhas) {
+                    ExecucaoFrota.espalhaNiveisIniciais(frota);
+                }
+
+                int executa(int nivel, boolean[] falhas) {
+                    frota.logicaControle(0, frota.tamanho);
+                    for (int tick = 0; tick < 5; tick++) {
+                        frota.atualizaSistemaFisico(0, frota.tamanho);
+                    }
+                    return frota.nivelAgua[nivel & 1023];
+                }
+            },
+            new Bancada("frotaCicloTabelaPorCaldeira", false) { // idem, com a decisão por tabela
+                final FrotaCaldeiras frota = new FrotaCaldeiras(1024);
+
+                void prepara(int nivel, boolean[] falhas) {
+                    ExecucaoFrota.espalhaNiveisIniciais(frota);
+                }
+
+                int executa(int nivel, boolean[] falhas) {
+                    frota.logicaControleTabela(0, frota.tamanho);
+                    for (int tick = 0; tick < 5; tick++) {
+                        frota.atualizaSistemaFisico(0, frota.tamanho);
+                    }
+                    return frota.nivelAgua[nivel & 1023];
+                }
+            },
+            new Bancada("registraTelemetria", false) {
+                TelemetriaMapeada gravador;
+
+                void prepara(int nivel, boolean[] falhas) {
+                    if (gravador == null) gravador = abreTelemetria();
+                    gravador.reinicia();
+                }
+
+                int executa(int nivel, boolean[] falhas) {
+                    // Volta ao início a cada trecho, para a bancada não encher o disco
+                    if (gravador.registros() == TelemetriaMapeada.REGISTROS_POR_TRECHO) gravador.reinicia();
+                    gravador.registra(nivel, SteamBoilerControl.estado.get(), 1);
+                    return (int) gravador.registros();
+                }
+            },
+            new Bancada("registraDecisaoMetricas", false) {
+                final MetricasCaldeira metricas = new MetricasCaldeira();
+                int n;
+
+                int executa(int nivel, boolean[] falhas) {
+                    // Alterna modo e bombas, para contar transições, tempos e partidas
+                    n++;
+                    metricas.registraDecisao(n * 5000000000L, n & 1, ~n & 1, (n & 2) != 0, (n & 4) != 0);
+                    return n;
+                }
+            },
+            new Bancada("registraPassoMetricas", false) {
+                final MetricasCaldeira metricas = new MetricasCaldeira();
+                int n;
+
+                int executa(int nivel, boolean[] falhas) {
+                    // Sensor de água falhando e voltando, nível variando e uma janela nova a cada 60 passos
+                    n++;
+                    long estado = EstadoCaldeira.empacota(n & 1023, SteamBoilerControl.V, EstadoCaldeira.TUDO_FUNCIONA);
+                    metricas.registraPasso(n * 1000000000L, EstadoCaldeira.com(estado, EstadoCaldeira.FUNCIONA_SENSOR_AGUA,
+                                                                               (n & 8) != 0));
+                    return n;
+                }
+            },
+            new Bancada("registraEvento", false) {
+                int executa(int nivel, boolean[] falhas) {
+                    RegistroEventos.registra(RegistroEventos.ESTADO, 1, nivel, 70, 63);
+                    return RegistroEventos.descartaPendentes();
+                }
+            },
+        };
+    }
+
+    public static void executa(String filtro) {
+        System.out.println("BANCADA: " + ITERACOES_AQUECIMENTO + " iterações de aquecimento e " +
+                          ITERACOES_MEDIDAS + " medidas de " + DURACAO_ITERACAO_NS / 1000000 + "ms por caso");
+        if (CONTADOR_ALOCACAO == null) {
+            System.out.println("Contador de alocação por thread indisponível nesta JVM: bytes/op = n/d");
+        }
+        System.out.printf("%-30s %6s %-18s %12s %10s%n", "bancada", "nível", "falhas", "ns/op", "bytes/op");
+
+        for (Bancada b : bancadas()) {
+            if (filtro != null && !b.nome.contains(filtro)) continue;
+            RegistroEventos.habilitado = b.nome.equals("registraEvento");
+            if (b.parametrizada) {
+                for (int nivel : NIVEIS) {
+                    for (int f = 0; f < FALHAS.length; f++) {
+                        mede(b, nivel, f);
+                    }
+                }
+            } else {
+                mede(b, 0, 0);
+            }
+        }
+        RegistroEventos.habilitado = true;
+    }
+
+    static void mede(Bancada b, int nivel, int f) {
+        boolean[] falhas = FALHAS[f];
+        for (int i = 0; i < ITERACOES_AQUECIMENTO; i++) {
+            iteracao(b, nivel, falhas);
+        }
+        long operacoes = 0;
+        long tempoNs = 0;
+        long bytes = 0;
+        for (int i = 0; i < ITERACOES_MEDIDAS; i++) {
+            long bytesAntes = bytesAlocados();
+            iteracao(b, nivel, falhas);
+            bytes += bytesAlocados() - bytesAntes;
+            operacoes += operacoesIteracao;
+            tempoNs += tempoIteracaoNs;
+        }
+        double bytesPorOperacao = bytes / (double) operacoes;
+        double nsPorOperacao = tempoNs / (double) operacoes;
+        if (b.nome.startsWith("frota")) {
+            nsPorOperacao /= 1024;
+            bytesPorOperacao /= 1024;
+        }
+        System.out.printf("%-30s %6s %-18s %12.1f %10s%n", b.nome,
+                          b.parametrizada ? String.valueOf(nivel) : "-",
+                          b.parametrizada ? NOMES_FALHAS[f] : "-",
+                          nsPorOperacao,
+                          CONTADOR_ALOCACAO != null ? String.format("%.1f", bytesPorOperacao) : "n/d");
+    }
+
+    /** Executa lotes da operação até completar a duração da iteração. */
+    static void iteracao(Bancada b, int nivel, boolean[] falhas) {
+        b.prepara(nivel, falhas);
+        int acumulado = 0;
+        long operacoes = 0;
+        long inicio = System.nanoTime();
+        long decorrido;
+        do {
+            for (int i = 0; i < LOTE; i++) {
+                acumulado += b.executa(nivel, falhas);
+            }
+            operacoes += LOTE;
+            decorrido = System.nanoTime() - inicio;
+        } while (decorrido < DURACAO_ITERACAO_NS);
+        sorvedouro = acumulado;
+        operacoesIteracao = operacoes;
+        tempoIteracaoNs = decorrido;
+    }
+
+    static TelemetriaMapeada abreTelemetria() {
+        try {
+            java.io.File arquivo = java.io.File.createTempFile("bancada", ".tel");
+            arquivo.deleteOnExit();
+            return new TelemetriaMapeada(arquivo.getPath());
+        } catch (java.io.IOException e) {
+            throw new IllegalStateException("Não foi possível criar o arquivo de telemetria", e);
+        }
+    }
+
+    static com.sun.management.ThreadMXBean contadorAlocacao() {
+        try {
+            java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+            if (mx instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported()) {
+                return (com.sun.management.ThreadMXBean) mx;
+            }
+        } catch (LinkageError e) {
+            // JVM sem as extensões com.sun.management
+        }
+        return null;
+    }
+
+    static long bytesAlocados() {
+        return CONTADOR_ALOCACAO == null ? 0 : CONTADOR_ALOCACAO.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
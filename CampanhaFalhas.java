@@ -0,0 +1,278 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Campanha de injeção de falhas (Monte Carlo). Cada cenário é uma caldeira com nível
+ * inicial e linha do tempo de falhas/reparos sorteados a partir de (semente, índice do
+ * cenário): a cada ciclo de controle cada componente (bomba 1, bomba 2, sensor de água,
+ * sensor de vapor) pode falhar ou ser reparado. Os cenários são divididos em lotes
+ * executados em paralelo por um ForkJoinPool; cada lote roda como uma FrotaCaldeiras
+ * própria, então nenhum cenário compartilha estado com outro.
+ *
+ * Como o sorteio depende só da semente e do índice, o resultado é o mesmo qualquer que
+ * seja o número de núcleos ou a divisão em lotes. Rodar a mesma semente com e sem o
+ * observador de nível, ou com e sem a decisão por cruzamento de faixa, mostra o efeito
+ * de cada um no tempo de recuperação até a faixa normal.
+ *
+ * Além do total de ciclos em cada modo, cada permanência (ciclos seguidos de um cenário no
+ * mesmo modo) entra no histograma do seu modo, em faixas de potências de 2. A última
+ * permanência de cada cenário é cortada no fim da campanha e entra com a duração que teve.
+ */
+public class CampanhaFalhas {
+
+    static final int LOTE = 512; // cenários por tarefa
+    static final int TICKS_POR_CICLO = ExecucaoFrota.TICKS_POR_CICLO;
+    static final int MODOS = FrotaCaldeiras.PARADA_EMERGENCIA + 1;
+    static final int FAIXAS_PERMANENCIA = 32; // faixa i: de 2^i a 2^(i+1) - 1 ciclos
+
+    final long semente;
+    final int ciclos;
+    final long limiarFalha;  // probabilidade de falha por ciclo, em escala de 2^63
+    final long limiarReparo; // probabilidade de reparo por ciclo, em escala de 2^63
+    final boolean usaObservador;
+    final boolean decisaoPorEvento;
+
+    CampanhaFalhas(long semente, int ciclos, double probabilidadeFalha, double probabilidadeReparo,
+                   boolean usaObservador, boolean decisaoPorEvento) {
+        this.semente = semente;
+        this.ciclos = ciclos;
+        this.usaObservador = usaObservador;
+        this.decisaoPorEvento = decisaoPorEvento;
+        this.limiarFalha = (long) (probabilidadeFalha * Long.MAX_VALUE);
+        this.limiarReparo = (long) (probabilidadeReparo * Long.MAX_VALUE);
+    }
+
+    /** Estatísticas agregadas de um conjunto de cenários. */
+    static class Resultado {
+        long cenarios = 0;
+        long cenariosViolacaoM1 = 0; // cenários que chegaram a M1 ou abaixo
+        long cenariosViolacaoM2 = 0; // cenários que chegaram a M2 ou acima
+        long ticksViolacaoM1 = 0;    // passos de física com nível <= M1
+        long ticksViolacaoM2 = 0;    // passos de física com nível >= M2
+        long recuperacoes = 0;       // saídas da faixa N1-N2 que voltaram para ela
+        long ticksRecuperacao = 0;   // soma da duração dessas saídas (passos de física)
+        long maiorRecuperacao = 0;
+        long semRecuperacao = 0;     // saídas que não voltaram até o fim do cenário
+        long ticksForaSemSensor = 0; // passos fora da faixa N1-N2 com o sensor de água em falha
+        final long[] ciclosPorModo = new long[MODOS];
+        final long[][] permanencias = new long[MODOS][FAIXAS_PERMANENCIA]; // quantas em cada faixa
+        final long[] maiorPermanencia = new long[MODOS];
+        int menorNivel = Integer.MAX_VALUE;
+        long cenarioMenorNivel = -1;
+        int maiorNivel = Integer.MIN_VALUE;
+        long cenarioMaiorNivel = -1;
+
+        void junta(Resultado outro) {
+            cenarios += outro.cenarios;
+            cenariosViolacaoM1 += outro.cenariosViolacaoM1;
+            cenariosViolacaoM2 += outro.cenariosViolacaoM2;
+            ticksViolacaoM1 += outro.ticksViolacaoM1;
+            ticksViolacaoM2 += outro.ticksViolacaoM2;
+            recuperacoes += outro.recuperacoes;
+            ticksRecuperacao += outro.ticksRecuperacao;
+            maiorRecuperacao = Math.max(maiorRecuperacao, outro.maiorRecuperacao);
+            semRecuperacao += outro.semRecuperacao;
+            ticksForaSemSensor += outro.ticksForaSemSensor;
+            for (int m = 0; m < ciclosPorModo.length; m++) {
+                ciclosPorModo[m] += outro.ciclosPorModo[m];
+                for (int i = 0; i < FAIXAS_PERMANENCIA; i++) permanencias[m][i] += outro.permanencias[m][i];
+                maiorPermanencia[m] = Math.max(maiorPermanencia[m], outro.maiorPermanencia[m]);
+            }
+            if (outro.menorNivel < menorNivel) {
+                menorNivel = outro.menorNivel;
+                cenarioMenorNivel = outro.cenarioMenorNivel;
+            }
+            if (outro.maiorNivel > maiorNivel) {
+                maiorNivel = outro.maiorNivel;
+                cenarioMaiorNivel = outro.cenarioMaiorNivel;
+            }
+        }
+
+        void registraPermanencia(int modo, int duracao) {
+            permanencias[modo][31 - Integer.numberOfLeadingZeros(duracao)]++;
+            if (duracao > maiorPermanencia[modo]) maiorPermanencia[modo] = duracao;
+        }
+    }
+
+    /** Divide o intervalo de cenários ao meio até chegar no tamanho de um lote. */
+    class Tarefa extends RecursiveTask<Resultado> {
+        private static final long serialVersionUID = 1L;
+        final long inicio;
+        final long fim;
+
+        Tarefa(long inicio, long fim) {
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        protected Resultado compute() {
+            if (fim - inicio <= LOTE) {
+                return executaLote(inicio, (int) (fim - inicio));
+            }
+            long meio = (inicio + fim) >>> 1;
+            Tarefa esquerda = new Tarefa(inicio, meio);
+            esquerda.fork();
+            Resultado resultado = new Tarefa(meio, fim).compute();
+            resultado.junta(esquerda.join());
+            return resultado;
+        }
+    }
+
+    Resultado executa(long cenarios, ForkJoinPool pool) {
+        return pool.invoke(new Tarefa(0, cenarios));
+    }
+
+    /** Roda os cenários [primeiro, primeiro + n) como uma frota isolada. */
+    Resultado executaLote(long primeiro, int n) {
+        FrotaCaldeiras frota = new FrotaCaldeiras(n);
+        frota.usaObservador = usaObservador;
+        frota.decisaoPorEvento = decisaoPorEvento;
+        long[] aleatorio = new long[n];
+        int[] foraDesde = new int[n]; // passo em que o nível saiu da faixa normal, ou -1
+        boolean[] violouM1 = new boolean[n];
+        boolean[] violouM2 = new boolean[n];
+        int[] modo = new int[n];       // modo da permanência atual, ou -1 antes do primeiro ciclo
+        int[] modoDesde = new int[n];  // ciclo em que ela começou
+        Resultado r = new Resultado();
+        r.cenarios = n;
+
+        for (int c = 0; c < n; c++) {
+            aleatorio[c] = semente ^ ((primeiro + c) * 0x9E3779B97F4A7C15L);
+            frota.reinicia(c, FrotaCaldeiras.N1 + (int) ((proximo(aleatorio, c) >>> 1) % (FrotaCaldeiras.N2 - FrotaCaldeiras.N1 + 1)));
+            foraDesde[c] = -1;
+            modo[c] = -1;
+        }
+
+        int passo = 0;
+
+        for (int ciclo = 1; ciclo <= ciclos; ciclo++) {
+            for (int tick = 1; tick <= TICKS_POR_CICLO; tick++) {
+                if (tick == TICKS_POR_CICLO) {
+                    // Controle antes da física no instante comum, como no modo normal
+                    for (int c = 0; c < n; c++) {
+                        sorteiaFalhas(frota, aleatorio, c);
+                    }
+                    frota.logicaControle(0, n);
+                    for (int c = 0; c < n; c++) {
+                        int novo = frota.atualModo[c];
+                        r.ciclosPorModo[novo]++;
+                        if (novo != modo[c]) {
+                            if (modo[c] >= 0) r.registraPermanencia(modo[c], ciclo - modoDesde[c]);
+                            modo[c] = novo;
+                            modoDesde[c] = ciclo;
+                        }
+                    }
+                }
+                frota.atualizaSistemaFisico(0, n);
+                passo++;
+                for (int c = 0; c < n; c++) {
+                    int nivel = frota.nivelAgua[c];
+                    boolean foraFaixa = nivel < FrotaCaldeiras.N1 || nivel > FrotaCaldeiras.N2;
+                    if (foraFaixa) {
+                        if (foraDesde[c] < 0) foraDesde[c] = passo;
+                        if (!frota.funcionaSensorAgua[c]) r.ticksForaSemSensor++;
+                    } else if (foraDesde[c] >= 0) {
+                        int duracao = passo - foraDesde[c];
+                        r.recuperacoes++;
+                        r.ticksRecuperacao += duracao;
+                        if (duracao > r.maiorRecuperacao) r.maiorRecuperacao = duracao;
+                        foraDesde[c] = -1;
+                    }
+                    if (nivel <= FrotaCaldeiras.M1) {
+                        r.ticksViolacaoM1++;
+                        violouM1[c] = true;
+                    } else if (nivel >= FrotaCaldeiras.M2) {
+                        r.ticksViolacaoM2++;
+                        violouM2[c] = true;
+                    }
+                    if (nivel < r.menorNivel) {
+                        r.menorNivel = nivel;
+                        r.cenarioMenorNivel = primeiro + c;
+                    }
+                    if (nivel > r.maiorNivel) {
+                        r.maiorNivel = nivel;
+                        r.cenarioMaiorNivel = primeiro + c;
+                    }
+                }
+            }
+        }
+
+        for (int c = 0; c < n; c++) {
+            if (violouM1[c]) r.cenariosViolacaoM1++;
+            if (violouM2[c]) r.cenariosViolacaoM2++;
+            if (foraDesde[c] >= 0) r.semRecuperacao++;
+            if (modo[c] >= 0) r.registraPermanencia(modo[c], ciclos + 1 - modoDesde[c]);
+        }
+        return r;
+    }
+
+    // Cada componente em funcionamento pode falhar; cada componente com falha pode ser reparado
+    void sorteiaFalhas(FrotaCaldeiras frota, long[] aleatorio, int c) {
+        frota.funcionaBomba1[c] = sorteia(frota.funcionaBomba1[c], aleatorio, c);
+        frota.funcionaBomba2[c] = sorteia(frota.funcionaBomba2[c], aleatorio, c);
+        frota.funcionaSensorAgua[c] = sorteia(frota.funcionaSensorAgua[c], aleatorio, c);
+        frota.funcionaSensorVapor[c] = sorteia(frota.funcionaSensorVapor[c], aleatorio, c);
+    }
+
+    boolean sorteia(boolean funciona, long[] aleatorio, int c) {
+        long x = proximo(aleatorio, c) >>> 1;
+        return funciona ? x >= limiarFalha : x < limiarReparo;
+    }
+
+    /** Gerador SplitMix64, com o estado de cada cenário guardado em aleatorio[c]. */
+    static long proximo(long[] aleatorio, int c) {
+        long z = (aleatorio[c] += 0x9E3779B97F4A7C15L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public static void executa(long cenarios, long semente, int ciclos, boolean usaObservador,
+                               boolean decisaoPorEvento) {
+        ForkJoinPool pool = new ForkJoinPool();
+        System.out.println("CAMPANHA DE FALHAS: " + cenarios + " cenários de " + ciclos +
+                          " ciclos, semente " + semente + ", " + pool.getParallelism() + " threads, " +
+                          (usaObservador ? "com" : "sem") + " observador de nível, " +
+                          (decisaoPorEvento ? "com" : "sem") + " decisão por cruzamento de faixa");
+
+        CampanhaFalhas campanha = new CampanhaFalhas(semente, ciclos, 0.02, 0.2, usaObservador, decisaoPorEvento);
+        long t0 = System.nanoTime();
+        Resultado r = campanha.executa(cenarios, pool);
+        long decorrido = System.nanoTime() - t0;
+        pool.shutdown();
+
+        System.out.printf("Concluída em %.1fs (%.0f cenários/s)%n", decorrido / 1e9, cenarios * 1e9 / decorrido);
+        System.out.printf("Violações de M1: %d cenários (%.3f%%), %d passos de física%n",
+                          r.cenariosViolacaoM1, 100.0 * r.cenariosViolacaoM1 / r.cenarios, r.ticksViolacaoM1);
+        System.out.printf("Violações de M2: %d cenários (%.3f%%), %d passos de física%n",
+                          r.cenariosViolacaoM2, 100.0 * r.cenariosViolacaoM2 / r.cenarios, r.ticksViolacaoM2);
+        System.out.printf("Recuperação até a faixa normal: %d saídas, média %.1f passos, pior %d passos, %d sem recuperação%n",
+                          r.recuperacoes, r.recuperacoes == 0 ? 0.0 : r.ticksRecuperacao / (double) r.recuperacoes,
+                          r.maiorRecuperacao, r.semRecuperacao);
+        System.out.println("Passos fora da faixa normal com o sensor de água em falha: " + r.ticksForaSemSensor);
+        System.out.println("Pior nível mínimo: " + r.menorNivel + "L (cenário " + r.cenarioMenorNivel + ")");
+        System.out.println("Pior nível máximo: " + r.maiorNivel + "L (cenário " + r.cenarioMaiorNivel + ")");
+        System.out.println("Tempo em cada modo (ciclos de controle):");
+        long total = 0;
+        for (long ciclosModo : r.ciclosPorModo) total += ciclosModo;
+        SteamBoilerControl.Mode[] nomes = SteamBoilerControl.Mode.values();
+        for (int m = 0; m < r.ciclosPorModo.length; m++) {
+            System.out.printf("  %-18s %12d (%5.1f%%)%n", nomes[m], r.ciclosPorModo[m], 100.0 * r.ciclosPorModo[m] / total);
+        }
+        System.out.println("Permanência em cada modo (ciclos seguidos, quantas permanências por faixa):");
+        for (int m = 0; m < MODOS; m++) {
+            long permanencias = 0;
+            for (long n : r.permanencias[m]) permanencias += n;
+            if (permanencias == 0) continue;
+            StringBuilder faixas = new StringBuilder();
+            for (int i = 0; i < FAIXAS_PERMANENCIA; i++) {
+                if (r.permanencias[m][i] == 0) continue;
+                long de = 1L << i;
+                long ate = Math.min((de << 1) - 1, r.maiorPermanencia[m]);
+                faixas.append(' ').append(de == ate ? String.valueOf(de) : de + "-" + ate).append(':').append(r.permanencias[m][i]);
+            }
+            System.out.printf("  %-18s %d permanências, média %.1f, maior %d;%s%n", nomes[m], permanencias,
+                              (double) r.ciclosPorModo[m] / permanencias, r.maiorPermanencia[m], faixas);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Teste de carga do GatewaySensores pela interface de loopback, no mesmo processo: uma
+ * thread geradora manda `quadros` quadros de leitura de uma frota de `caldeiras` caldeiras,
+ * em datagramas de QUADROS_POR_DATAGRAMA quadros (ou por uma conexão TCP), e o gateway os
+ * decodifica e publica na frota. Mostra quadros por segundo, perdas (UDP descarta quando o
+ * buffer do socket enche) e os bytes que a thread do gateway alocou. Sem fatias rodando,
+ * as leituras pendentes são aplicadas no fim, como a fatia de cada caldeira faria.
+ *
+ * Na metade dos quadros o gerador simula o reinício da fonte: passa para a época 1 e volta
+ * a contar as sequências de 1, e nenhum quadro depois disso deve ser descartado.
+ *
+ * O gerador reescreve só a caldeira, a sequência e o nível de cada quadro em um buffer
+ * direto reutilizado, então o custo medido é quase todo do gateway e das chamadas de
+ * sistema. Com um núcleo só, gerador e gateway dividem a CPU.
+ */
+public class CargaGateway {
+
+    static final long ESPERA_FIM_NS = 500000000L; // sem quadros novos por 0,5s: o envio acabou
+
+    public static void executa(long quadros, int caldeiras, boolean tcp) throws IOException, InterruptedException {
+        System.out.println("CARGA DO GATEWAY: " + quadros + " quadros de " + caldeiras + " caldeiras por " +
+                           (tcp ? "TCP" : "UDP (" + GatewaySensores.QUADROS_POR_DATAGRAMA + " quadros por datagrama)") +
+                           " em loopback");
+        RegistroEventos.habilitado = false;
+        FrotaCaldeiras frota = new FrotaCaldeiras(caldeiras);
+        GatewaySensores gateway = new GatewaySensores(0, frota);
+        gateway.inicia();
+
+        long enviados = tcp ? enviaTcp(gateway.porta(), quadros, caldeiras) : enviaUdp(gateway.porta(), quadros, caldeiras);
+
+        // Espera o gateway esvaziar os buffers dos sockets
+        long visto = -1;
+        while (gateway.ultimoNs != visto || System.nanoTime() - visto < ESPERA_FIM_NS) {
+            visto = gateway.ultimoNs;
+            Thread.sleep(100);
+        }
+        gateway.encerra();
+        int aplicadas = frota.aplicaLeiturasPendentes(0, frota.tamanho);
+        RegistroEventos.habilitado = true;
+
+        System.out.printf("[gerador] %d quadros enviados%n", enviados);
+        gateway.imprime();
+        long perdidos = enviados - gateway.quadros - gateway.descartados;
+        System.out.printf("[gateway] %d quadros perdidos (%.2f%%)%n", perdidos, 100.0 * perdidos / enviados);
+        System.out.printf("[frota] %d leituras pendentes aplicadas (a última de cada caldeira)%n", aplicadas);
+    }
+
+    // Preenche o lote com os quadros a partir de `primeiro`; a partir do quadro `reinicio` a
+    // fonte recomeça na época 1. O k-ésimo quadro da época é da caldeira k % caldeiras
+    static void preencheLote(ByteBuffer lote, long primeiro, int porLote, int caldeiras, long reinicio) {
+        for (int i = 0; i < porLote; i++) {
+            long n = primeiro + i;
+            int epoca = n < reinicio ? 0 : 1;
+            long k = n < reinicio ? n : n - reinicio;
+            int caldeira = (int) (k % caldeiras);
+            int sequencia = (int) (k / caldeiras) + 1;
+            int nivel = 300 + sequencia % 400; // sobe devagar dentro da faixa normal e recomeça
+            GatewaySensores.escreveQuadro(lote, i * GatewaySensores.TAMANHO_QUADRO, caldeira, epoca, sequencia, nivel,
+                                          SteamBoilerControl.V, 0xF);
+        }
+        lote.position(0).limit(porLote * GatewaySensores.TAMANHO_QUADRO);
+    }
+
+    static long enviaUdp(int porta, long quadros, int caldeiras) throws IOException {
+        ByteBuffer lote = ByteBuffer.allocateDirect(GatewaySensores.QUADROS_POR_DATAGRAMA * GatewaySensores.TAMANHO_QUADRO)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+        DatagramChannel canal = DatagramChannel.open();
+        canal.connect(new InetSocketAddress("127.0.0.1", porta));
+        long n = 0;
+        while (n < quadros) {
+            int porLote = (int) Math.min(GatewaySensores.QUADROS_POR_DATAGRAMA, quadros - n);
+            preencheLote(lote, n, porLote, caldeiras, quadros / 2);
+            canal.write(lote);
+            n += porLote;
+        }
+        canal.close();
+        return n;
+    }
+
+    static long enviaTcp(int porta, long quadros, int caldeiras) throws IOException {
+        ByteBuffer lote = ByteBuffer.allocateDirect(GatewaySensores.QUADROS_POR_DATAGRAMA * GatewaySensores.TAMANHO_QUADRO)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+        SocketChannel canal = SocketChannel.open(new InetSocketAddress("127.0.0.1", porta));
+        long n = 0;
+        while (n < quadros) {
+            int porLote = (int) Math.min(GatewaySensores.QUADROS_POR_DATAGRAMA, quadros - n);
+            preencheLote(lote, n, porLote, caldeiras, quadros / 2);
+            while (lote.hasRemaining()) canal.write(lote);
+            n += porLote;
+        }
+        canal.close();
+        return n;
+    }
+}
@@ -0,0 +1,318 @@
+/**
+ * A decisão de SteamBoilerControl.logicaControle com o estado no formato de antes de
+ * EstadoCaldeira: cada valor em um campo volatile próprio, relido a cada uso no meio da
+ * decisão, e os comandos das bombas escritos direto nos campos volatile. Os ramos, os
+ * eventos e os contadores são os mesmos de logicaControle. Só existe para comparação
+ * (EstresseEstado): as leituras passam por métodos para que a conferência possa
+ * acompanhá-las, e a JVM os reduz à leitura do campo quando não são sobrescritos.
+ */
+public class ControleLegado {
+
+    static final int M1 = SteamBoilerControl.M1;
+    static final int M2 = SteamBoilerControl.M2;
+    static final int N1 = SteamBoilerControl.N1;
+    static final int N2 = SteamBoilerControl.N2;
+
+    // O estado no formato antigo: escrito pela física (nível e vapor) e pelo controle
+    static volatile int nivelAgua = 500;
+    static volatile int saidaVapor = SteamBoilerControl.V;
+    static volatile boolean funcionaBomba1 = true;
+    static volatile boolean funcionaBomba2 = true;
+    static volatile boolean funcionaSensorAgua = true;
+    static volatile boolean funcionaSensorVapor = true;
+    static volatile int nivelEstimado = 500;
+    static volatile int incertezaEstimativa = 0;
+    static volatile boolean ligadaBomba1 = false;
+    static volatile boolean ligadaBomba2 = false;
+
+    static volatile SteamBoilerControl.Mode atualModo = SteamBoilerControl.Mode.INICIALIZACAO;
+    static int ciclosEstabilizacao = 0;
+    static int ciclosModoEmergencia = 0;
+
+    /** Volta ao estado inicial. */
+    static void reinicia() {
+        nivelAgua = 500;
+        saidaVapor = SteamBoilerControl.V;
+        funcionaBomba1 = true;
+        funcionaBomba2 = true;
+        funcionaSensorAgua = true;
+        funcionaSensorVapor = true;
+        nivelEstimado = 500;
+        incertezaEstimativa = 0;
+        ligadaBomba1 = false;
+        ligadaBomba2 = false;
+        atualModo = SteamBoilerControl.Mode.INICIALIZACAO;
+        ciclosEstabilizacao = 0;
+        ciclosModoEmergencia = 0;
+    }
+
+    // Cada uso de um valor na decisão é uma leitura do campo
+    int nivel() { return nivelAgua; }
+    int vapor() { return saidaVapor; }
+    boolean bomba1() { return funcionaBomba1; }
+    boolean bomba2() { return funcionaBomba2; }
+    boolean sensorAgua() { return funcionaSensorAgua; }
+    boolean sensorVapor() { return funcionaSensorVapor; }
+    int estimativa() { return nivelEstimado; }
+    int incerteza() { return incertezaEstimativa; }
+
+    void logicaControle(boolean periodica) {
+        boolean estaNivelEmergencia = (nivel() <= M1 || nivel() >= M2);
+
+        switch (atualModo) {
+            case INICIALIZACAO:
+                evento(RegistroEventos.MODO);
+                if (nivel() < N1) {
+                    ligadaBomba1 = bomba1();
+                    ligadaBomba2 = bomba2();
+                    evento(RegistroEventos.INICIALIZACAO_NIVEL_BAIXO, nivel());
+                } else if (nivel() > N2) {
+                    ligadaBomba1 = false;
+                    ligadaBomba2 = false;
+                    evento(RegistroEventos.INICIALIZACAO_NIVEL_ALTO, nivel());
+                } else {
+                    ligadaBomba1 = bomba1() && (nivel() < (N1 + N2) / 2);
+                    ligadaBomba2 = false;
+                    evento(RegistroEventos.INICIALIZACAO_NIVEL_NORMAL, nivel());
+                }
+                if (periodica) ciclosEstabilizacao++;
+                if (ciclosEstabilizacao >= 3) {
+                    if (estaNivelEmergencia) {
+                        atualModo = SteamBoilerControl.Mode.PARADA_EMERGENCIA;
+                        ciclosModoEmergencia = 0;
+                        evento(RegistroEventos.NIVEL_CRITICO_DETECTADO);
+                    } else if (checaIntegridadeSistema()) {
+                        atualModo = SteamBoilerControl.Mode.NORMAL;
+                        ciclosEstabilizacao = 0;
+                        evento(RegistroEventos.SISTEMA_ESTAVEL);
+                    } else {
+                        if (!sensorAgua()) {
+                            atualModo = SteamBoilerControl.Mode.SALVAMENTO;
+                            ciclosEstabilizacao = 0;
+                            evento(RegistroEventos.SENSOR_AGUA_COM_FALHA);
+                        } else if (!bomba1() || !bomba2()) {
+                            atualModo = SteamBoilerControl.Mode.DEGRADADO;
+                            ciclosEstabilizacao = 0;
+                            evento(RegistroEventos.BOMBA_COM_FALHA);
+                        }
+                    }
+                }
+                break;
+
+            case NORMAL:
+                evento(RegistroEventos.MODO);
+                if (estaNivelEmergencia) {
+                    atualModo = SteamBoilerControl.Mode.PARADA_EMERGENCIA;
+                    ciclosModoEmergencia = 0;
+                    evento(RegistroEventos.EMERGENCIA_NIVEL_CRITICO, nivel(), 1);
+                } else if (!sensorAgua()) {
+                    atualModo = SteamBoilerControl.Mode.SALVAMENTO;
+                    evento(RegistroEventos.SENSOR_AGUA_COM_FALHA);
+                } else if (!bomba1() || !bomba2()) {
+                    atualModo = SteamBoilerControl.Mode.DEGRADADO;
+                    evento(RegistroEventos.BOMBA_COM_FALHA);
+                } else {
+                    controleBombas_TudoBem();
+                }
+                break;
+
+            case DEGRADADO:
+                evento(RegistroEventos.MODO);
+                if (estaNivelEmergencia) {
+                    atualModo = SteamBoilerControl.Mode.PARADA_EMERGENCIA;
+                    ciclosModoEmergencia = 0;
+                    evento(RegistroEventos.EMERGENCIA_NIVEL_CRITICO, nivel(), 1);
+                } else if (!sensorAgua()) {
+                    atualModo = SteamBoilerControl.Mode.SALVAMENTO;
+                    evento(RegistroEventos.SENSOR_AGUA_COM_FALHA);
+                } else if (bomba1() && bomba2()) {
+                    atualModo = SteamBoilerControl.Mode.NORMAL;
+                    evento(RegistroEventos.BOMBAS_REPARADAS);
+                } else {
+                    controleBombas_BombaComFalha();
+                }
+                break;
+
+            case SALVAMENTO:
+                evento(RegistroEventos.MODO);
+                if (estaNivelEmergencia) {
+                    atualModo = SteamBoilerControl.Mode.PARADA_EMERGENCIA;
+                    ciclosModoEmergencia = 0;
+                    evento(RegistroEventos.EMERGENCIA_NIVEL_CRITICO, nivel(), 0);
+                } else if (sensorAgua()) {
+                    if (bomba1() && bomba2()) {
+                        atualModo = SteamBoilerControl.Mode.NORMAL;
+                        evento(RegistroEventos.SISTEMA_REPARADO);
+                    } else {
+                        atualModo = SteamBoilerControl.Mode.DEGRADADO;
+                        evento(RegistroEventos.SENSOR_REPARADO);
+                    }
+                } else {
+                    controleBombas_SemSensor();
+                }
+                break;
+
+            case PARADA_EMERGENCIA:
+                evento(RegistroEventos.MODO);
+                if (nivel() <= M1) {
+                    if (bomba1()) ligadaBomba1 = true;
+                    if (bomba2()) ligadaBomba2 = true;
+                    evento(RegistroEventos.EMERGENCIA_BAIXO);
+                    if (nivel() > M1 + 20) {
+                        if (periodica) ciclosModoEmergencia++;
+                        evento(RegistroEventos.RECUPERACAO_EM_PROGRESSO, ciclosModoEmergencia);
+                        if (ciclosModoEmergencia >= 2) {
+                            evento(RegistroEventos.NIVEL_SEGURO_ATINGIDO);
+                            atualModo = SteamBoilerControl.Mode.INICIALIZACAO;
+                            ciclosModoEmergencia = 0;
+                            ciclosEstabilizacao = 0;
+                        }
+                    } else {
+                        ciclosModoEmergencia = 0;
+                    }
+                } else if (nivel() >= M2) {
+                    ligadaBomba1 = false;
+                    ligadaBomba2 = false;
+                    evento(RegistroEventos.EMERGENCIA_ALTO);
+                    if (nivel() < M2 - 20) {
+                        if (periodica) ciclosModoEmergencia++;
+                        evento(RegistroEventos.RECUPERACAO_EM_PROGRESSO, ciclosModoEmergencia);
+                        if (ciclosModoEmergencia >= 2) {
+                            evento(RegistroEventos.NIVEL_SEGURO_ATINGIDO);
+                            atualModo = SteamBoilerControl.Mode.INICIALIZACAO;
+                            ciclosModoEmergencia = 0;
+                            ciclosEstabilizacao = 0;
+                        }
+                    } else {
+                        ciclosModoEmergencia = 0;
+                    }
+                } else {
+                    evento(RegistroEventos.NIVEL_NAO_CRITICO);
+                    atualModo = SteamBoilerControl.Mode.INICIALIZACAO;
+                    ciclosModoEmergencia = 0;
+                    ciclosEstabilizacao = 0;
+                }
+                evento(RegistroEventos.AGUARDANDO_ESTABILIZACAO);
+                break;
+        }
+    }
+
+    boolean checaIntegridadeSistema() {
+        boolean nivelAguaSeguro = (nivel() > M1 + 50 && nivel() < M2 - 50);
+        boolean nivelAguaNormal = (nivel() >= N1 && nivel() <= N2);
+        boolean tudoFunciona = (sensorAgua() && sensorVapor() && (bomba1() || bomba2()));
+        evento(RegistroEventos.INTEGRIDADE, nivelAguaSeguro ? 1 : 0, nivelAguaNormal ? 1 : 0, tudoFunciona ? 1 : 0);
+        return nivelAguaSeguro && tudoFunciona;
+    }
+
+    void controleBombas_TudoBem() {
+        if (nivel() < N1) {
+            ligadaBomba1 = true;
+            ligadaBomba2 = true;
+            evento(RegistroEventos.NIVEL_ABAIXO_NORMAL, nivel());
+        } else if (nivel() > N2) {
+            ligadaBomba1 = false;
+            ligadaBomba2 = false;
+            evento(RegistroEventos.NIVEL_ACIMA_NORMAL, nivel());
+        } else if (nivel() < (N1 + N2) / 2) {
+            ligadaBomba1 = true;
+            ligadaBomba2 = false;
+            evento(RegistroEventos.NIVEL_MEDIO_BAIXO, nivel());
+        } else {
+            ligadaBomba1 = false;
+            ligadaBomba2 = false;
+            evento(RegistroEventos.NIVEL_NORMAL, nivel());
+        }
+    }
+
+    void controleBombas_BombaComFalha() {
+        if (nivel() < N1) {
+            if (bomba1()) {
+                ligadaBomba1 = true;
+                evento(RegistroEventos.DEGRADADO_BOMBA_LIGADA, 1, nivel());
+            } else {
+                ligadaBomba1 = false;
+            }
+            if (bomba2()) {
+                ligadaBomba2 = true;
+                evento(RegistroEventos.DEGRADADO_BOMBA_LIGADA, 2, nivel());
+            } else {
+                ligadaBomba2 = false;
+            }
+        } else if (nivel() > N2) {
+            ligadaBomba1 = false;
+            ligadaBomba2 = false;
+            evento(RegistroEventos.DEGRADADO_NIVEL_ALTO, nivel());
+        } else {
+            if (bomba1() && !bomba2()) {
+                ligadaBomba1 = true;
+                ligadaBomba2 = false;
+                evento(RegistroEventos.DEGRADADO_APENAS_BOMBA, 1);
+            } else if (!bomba1() && bomba2()) {
+                ligadaBomba1 = false;
+                ligadaBomba2 = true;
+                evento(RegistroEventos.DEGRADADO_APENAS_BOMBA, 2);
+            } else if (bomba1() && bomba2()) {
+                ligadaBomba1 = true;
+                ligadaBomba2 = false;
+                evento(RegistroEventos.DEGRADADO_ECONOMIA);
+            }
+        }
+    }
+
+    void controleBombas_SemSensor() {
+        if (SteamBoilerControl.usaObservador && ObservadorNivel.confiavel(incerteza())) {
+            controleBombas_Estimativa();
+            return;
+        }
+        if (vapor() < 50) {
+            if (bomba1()) ligadaBomba1 = true;
+            if (bomba2()) ligadaBomba2 = true;
+            evento(RegistroEventos.SALVAMENTO_VAPOR_BAIXO, vapor());
+        } else if (vapor() > 75) {
+            ligadaBomba1 = false;
+            ligadaBomba2 = false;
+            evento(RegistroEventos.SALVAMENTO_VAPOR_ALTO, vapor());
+        } else {
+            if (bomba1()) {
+                ligadaBomba1 = true;
+                ligadaBomba2 = false;
+            } else if (bomba2()) {
+                ligadaBomba1 = false;
+                ligadaBomba2 = true;
+            }
+            evento(RegistroEventos.SALVAMENTO_CONSERVATIVO, vapor());
+        }
+    }
+
+    void controleBombas_Estimativa() {
+        if (estimativa() < N1) {
+            ligadaBomba1 = bomba1();
+            ligadaBomba2 = bomba2();
+        } else if (estimativa() > N2) {
+            ligadaBomba1 = false;
+            ligadaBomba2 = false;
+        } else {
+            ligadaBomba1 = bomba1();
+            ligadaBomba2 = !bomba1() && bomba2();
+        }
+        evento(RegistroEventos.SALVAMENTO_ESTIMATIVA, estimativa(), incerteza(),
+               (ligadaBomba1 ? RegistroEventos.BIT_LIGADA_BOMBA1 : 0) | (ligadaBomba2 ? RegistroEventos.BIT_LIGADA_BOMBA2 : 0));
+    }
+
+    static void evento(int codigo) {
+        RegistroEventos.registra(codigo, atualModo.ordinal());
+    }
+
+    static void evento(int codigo, int a) {
+        RegistroEventos.registra(codigo, atualModo.ordinal(), a);
+    }
+
+    static void evento(int codigo, int a, int b) {
+        RegistroEventos.registra(codigo, atualModo.ordinal(), a, b);
+    }
+
+    static void evento(int codigo, int a, int b, int c) {
+        RegistroEventos.registra(codigo, atualModo.ordinal(), a, b, c);
+    }
+}
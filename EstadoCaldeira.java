@@ -0,0 +1,91 @@
+/**
+ * Codificação do estado compartilhado da caldeira em uma única palavra de 64 bits, para
+ * que a física publique nível e vapor de uma só vez e o controle leia um instantâneo
+ * consistente com uma única leitura atômica:
+ *
+ *   bits  0-11  nível de água (litros)
+ *   bits 12-23  saída de vapor (litros/s)
+ *   bits 24-27  bomba 1, bomba 2, sensor de água e sensor de vapor funcionando
+ *   bits 28-29  bomba 1 e bomba 2 ligadas
+ *   bits 32-43  nível estimado pelo observador (ver ObservadorNivel)
+ *   bits 44-53  incerteza da estimativa (litros, saturada em 1023)
+ *   bits 54-63  número do passo de física que produziu o nível e o vapor (módulo 1024)
+ */
+public class EstadoCaldeira {
+
+    static final int MASCARA_VALOR = 0xFFF;
+    static final int DESLOCAMENTO_VAPOR = 12;
+    static final int DESLOCAMENTO_COMPONENTES = 24;
+    static final int DESLOCAMENTO_ESTIMATIVA = 32;
+    static final int DESLOCAMENTO_INCERTEZA = 44;
+    static final int MASCARA_INCERTEZA = 0x3FF;
+    static final int DESLOCAMENTO_PASSO = 54;
+
+    static final long FUNCIONA_BOMBA1 = 1L << 24;
+    static final long FUNCIONA_BOMBA2 = 1L << 25;
+    static final long FUNCIONA_SENSOR_AGUA = 1L << 26;
+    static final long FUNCIONA_SENSOR_VAPOR = 1L << 27;
+    static final long LIGADA_BOMBA1 = 1L << 28;
+    static final long LIGADA_BOMBA2 = 1L << 29;
+
+    static final long TUDO_FUNCIONA = FUNCIONA_BOMBA1 | FUNCIONA_BOMBA2 | FUNCIONA_SENSOR_AGUA | FUNCIONA_SENSOR_VAPOR;
+
+    static long empacota(int nivel, int vapor, long bits) {
+        return (nivel & MASCARA_VALOR) | (long) (vapor & MASCARA_VALOR) << DESLOCAMENTO_VAPOR | bits;
+    }
+
+    static int nivel(long estado) {
+        return (int) estado & MASCARA_VALOR;
+    }
+
+    static int vapor(long estado) {
+        return (int) (estado >>> DESLOCAMENTO_VAPOR) & MASCARA_VALOR;
+    }
+
+    /** Bits 24-29 (falhas e bombas ligadas) como um inteiro de 0 a 63. */
+    static int componentes(long estado) {
+        return (int) (estado >>> DESLOCAMENTO_COMPONENTES) & 0x3F;
+    }
+
+    static int estimativa(long estado) {
+        return (int) (estado >>> DESLOCAMENTO_ESTIMATIVA) & MASCARA_VALOR;
+    }
+
+    static int incerteza(long estado) {
+        return (int) (estado >>> DESLOCAMENTO_INCERTEZA) & MASCARA_INCERTEZA;
+    }
+
+    /** Mesmo estado com outra estimativa de nível; a incerteza satura em 1023. */
+    static long comEstimativa(long estado, int estimativa, int incerteza) {
+        long semEstimativa = estado & ~((long) MASCARA_VALOR << DESLOCAMENTO_ESTIMATIVA
+                                        | (long) MASCARA_INCERTEZA << DESLOCAMENTO_INCERTEZA);
+        return semEstimativa | (long) (estimativa & MASCARA_VALOR) << DESLOCAMENTO_ESTIMATIVA
+             | (long) Math.min(incerteza, MASCARA_INCERTEZA) << DESLOCAMENTO_INCERTEZA;
+    }
+
+    static long passo(long estado) {
+        return estado >>> DESLOCAMENTO_PASSO;
+    }
+
+    static boolean tem(long estado, long bit) {
+        return (estado & bit) != 0;
+    }
+
+    static long com(long estado, long bit, boolean valor) {
+        return valor ? estado | bit : estado & ~bit;
+    }
+
+    /** Mesmo estado com os bits 24-27 (componentes funcionando) tirados dos 4 bits de `saude`. */
+    static long comSaude(long estado, int saude) {
+        return estado & ~TUDO_FUNCIONA | (long) (saude & 0xF) << DESLOCAMENTO_COMPONENTES;
+    }
+
+    /** Mesmo estado com o nível e o vapor de um novo passo de física (a estimativa não muda). */
+    static long comFisica(long estado, int nivel, int vapor) {
+        long passo = (passo(estado) + 1) & 0x3FF;
+        long bits = estado & (TUDO_FUNCIONA | LIGADA_BOMBA1 | LIGADA_BOMBA2
+                              | (long) MASCARA_VALOR << DESLOCAMENTO_ESTIMATIVA
+                              | (long) MASCARA_INCERTEZA << DESLOCAMENTO_INCERTEZA);
+        return empacota(nivel, vapor, bits) | passo << DESLOCAMENTO_PASSO;
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Teste de estresse do estado compartilhado: uma thread roda passos da física real
+ * (SteamBoilerControl.atualizaSistemaFisico) sem parar enquanto outra decide, também sem
+ * parar. Cada passo também é republicado no formato antigo (ControleLegado), nível, vapor
+ * e estimativa em campos volatile separados, escritos um a um.
+ *
+ * Primeiro a decisão lê o formato antigo, relendo os campos a cada uso como fazia antes,
+ * até ver RASGADAS_ALVO visões rasgadas ou passar o tempo dado. Depois a mesma decisão,
+ * com a mesma física e a mesma conferência, roda o mesmo número de vezes lendo uma única
+ * palavra de SteamBoilerControl.estado no início, como logicaControle faz. Uma visão é
+ * rasgada quando uma decisão lê dois níveis diferentes, ou um vapor que não é o que a
+ * física calcula para o nível lido.
+ *
+ * Antes disso, sem concorrência, mede o custo de uma decisão inteira nas duas formas:
+ * ControleLegado, com as leituras e as escritas nos campos volatile, e logicaControle,
+ * com uma leitura da palavra, guardada num campo comum de onde a decisão extrai cada valor,
+ * e a publicação das bombas no fim.
+ */
+public class EstresseEstado {
+
+    static final int RASGADAS_ALVO = 100;
+    static final int DECISOES_CUSTO = 4194304;
+    static final int DECISOES_POR_ENTRADA = 64; // as entradas mudam a cada tantas decisões
+    static final int ENTRADAS = 1024;
+
+    static volatile boolean parar = false;
+
+    static int vaporEsperado(int nivel) {
+        return nivel < 200 ? 40 : nivel > 800 ? 80 : SteamBoilerControl.V;
+    }
+
+    /**
+     * A decisão de ControleLegado com cada leitura conferida: todo nível lido tem que ser o
+     * primeiro lido na decisão, e todo vapor o da física para esse nível. Com `empacotado`,
+     * os valores saem de uma palavra de SteamBoilerControl.estado carregada no início.
+     */
+    static class DecisaoConferida extends ControleLegado {
+        final boolean empacotado;
+        private long palavra;
+        private int primeiroNivel;
+        boolean rasgada;
+
+        DecisaoConferida(boolean empacotado) {
+            this.empacotado = empacotado;
+        }
+
+        void decide() {
+            if (empacotado) palavra = SteamBoilerControl.estado.get();
+            primeiroNivel = -1;
+            rasgada = false;
+            logicaControle(true);
+        }
+
+        int nivel() {
+            int n = empacotado ? EstadoCaldeira.nivel(palavra) : nivelAgua;
+            if (primeiroNivel < 0) primeiroNivel = n;
+            else if (n != primeiroNivel) rasgada = true;
+            return n;
+        }
+
+        int vapor() {
+            int v = empacotado ? EstadoCaldeira.vapor(palavra) : saidaVapor;
+            if (v != vaporEsperado(primeiroNivel)) rasgada = true;
+            return v;
+        }
+
+        boolean bomba1() {
+            return empacotado ? EstadoCaldeira.tem(palavra, EstadoCaldeira.FUNCIONA_BOMBA1) : funcionaBomba1;
+        }
+
+        boolean bomba2() {
+            return empacotado ? EstadoCaldeira.tem(palavra, EstadoCaldeira.FUNCIONA_BOMBA2) : funcionaBomba2;
+        }
+
+        boolean sensorAgua() {
+            return empacotado ? EstadoCaldeira.tem(palavra, EstadoCaldeira.FUNCIONA_SENSOR_AGUA) : funcionaSensorAgua;
+        }
+
+        boolean sensorVapor() {
+            return empacotado ? EstadoCaldeira.tem(palavra, EstadoCaldeira.FUNCIONA_SENSOR_VAPOR) : funcionaSensorVapor;
+        }
+
+        int estimativa() {
+            return empacotado ? EstadoCaldeira.estimativa(palavra) : nivelEstimado;
+        }
+
+        int incerteza() {
+            return empacotado ? EstadoCaldeira.incerteza(palavra) : incertezaEstimativa;
+        }
+    }
+
+    /** Retorna false se a leitura empacotada teve alguma visão rasgada. */
+    public static boolean executa(int segundos) {
+        System.out.println("ESTRESSE DO ESTADO COMPARTILHADO: até " + segundos + "s na etapa com campos separados");
+        RegistroEventos.habilitado = false;
+        long inicial = SteamBoilerControl.estado.get();
+
+        medeCustoDecisao(inicial);
+
+        long[] separados = estressa(new DecisaoConferida(false), inicial, Long.MAX_VALUE, segundos);
+        System.out.println("Campos separados:  " + separados[0] + " passos de física, " + separados[1] +
+                          " decisões, " + separados[2] + " visões rasgadas");
+        long[] empacotado = estressa(new DecisaoConferida(true), inicial, separados[1], Integer.MAX_VALUE);
+        System.out.println("Estado empacotado: " + empacotado[0] + " passos de física, " + empacotado[1] +
+                          " decisões, " + empacotado[2] + " visões rasgadas");
+
+        SteamBoilerControl.estado.set(inicial);
+        SteamBoilerControl.carregaEstado();
+        RegistroEventos.habilitado = true;
+        return empacotado[2] == 0;
+    }
+
+    /**
+     * Física e decisão em duas threads, até `decisoes` decisões, RASGADAS_ALVO visões
+     * rasgadas ou `segundos`. Devolve { passos de física, decisões, visões rasgadas }.
+     */
+    static long[] estressa(DecisaoConferida decisao, long inicial, long decisoes, int segundos) {
+        SteamBoilerControl.estado.set(inicial);
+        ControleLegado.reinicia();
+        parar = false;
+        final long[] passos = new long[1];
+        Thread fisica = new Thread() {
+            public void run() {
+                long n = 0;
+                while (!parar) {
+                    SteamBoilerControl.atualizaSistemaFisico();
+                    // O mesmo passo no formato antigo, um campo de cada vez
+                    long s = SteamBoilerControl.estado.get();
+                    ControleLegado.nivelAgua = EstadoCaldeira.nivel(s);
+                    ControleLegado.saidaVapor = EstadoCaldeira.vapor(s);
+                    ControleLegado.nivelEstimado = EstadoCaldeira.estimativa(s);
+                    ControleLegado.incertezaEstimativa = EstadoCaldeira.incerteza(s);
+                    n++;
+                }
+                passos[0] = n;
+            }
+        };
+        fisica.start();
+
+        long n = 0;
+        long rasgadas = 0;
+        long fim = System.nanoTime() + segundos * 1000000000L;
+        while (n < decisoes && rasgadas < RASGADAS_ALVO && ((n & 1023) != 0 || System.nanoTime() < fim)) {
+            // Falhas alternadas, para que a decisão passe por vários modos
+            if ((n & 1023) == 0) {
+                boolean funciona = (n & 2048) == 0;
+                SteamBoilerControl.alteraEstado(EstadoCaldeira.FUNCIONA_BOMBA1, funciona);
+                ControleLegado.funcionaBomba1 = funciona;
+            }
+            decisao.decide();
+            publicaBombas(ControleLegado.ligadaBomba1, ControleLegado.ligadaBomba2);
+            if (decisao.rasgada) rasgadas++;
+            n++;
+        }
+        parar = true;
+        junta(fisica);
+        return new long[] { passos[0], n, rasgadas };
+    }
+
+    // Os comandos da decisão voltam para o estado que a física usa
+    static void publicaBombas(boolean bomba1, boolean bomba2) {
+        long anterior, atualizado;
+        do {
+            anterior = SteamBoilerControl.estado.get();
+            atualizado = EstadoCaldeira.com(EstadoCaldeira.com(anterior, EstadoCaldeira.LIGADA_BOMBA1, bomba1),
+                                            EstadoCaldeira.LIGADA_BOMBA2, bomba2);
+        } while (anterior != atualizado && !SteamBoilerControl.estado.compareAndSet(anterior, atualizado));
+    }
+
+    /**
+     * Custo de uma decisão inteira, sem concorrência, com as mesmas entradas nas duas formas:
+     * a cada DECISOES_POR_ENTRADA decisões troca o nível (varrendo de 0 a C), o vapor e as
+     * falhas. Antes de medir, confere que as duas formas decidem igual.
+     */
+    static void medeCustoDecisao(long inicial) {
+        long[] entradas = new long[ENTRADAS];
+        for (int i = 0; i < ENTRADAS; i++) {
+            int nivel = (int) ((long) i * 37 % (SteamBoilerControl.C + 1));
+            long componentes = (i >> 6) % 5 == 0 ? EstadoCaldeira.TUDO_FUNCIONA & ~EstadoCaldeira.FUNCIONA_BOMBA1
+                             : (i >> 6) % 5 == 1 ? EstadoCaldeira.TUDO_FUNCIONA & ~EstadoCaldeira.FUNCIONA_SENSOR_AGUA
+                             : EstadoCaldeira.TUDO_FUNCIONA;
+            entradas[i] = EstadoCaldeira.comEstimativa(EstadoCaldeira.empacota(nivel, vaporEsperado(nivel), componentes),
+                                                       nivel, 0);
+        }
+        ControleLegado legado = new ControleLegado();
+
+        long divergencias = 0;
+        reinicia(inicial);
+        for (int i = 0; i < ENTRADAS * DECISOES_POR_ENTRADA; i++) {
+            if (i % DECISOES_POR_ENTRADA == 0) publica(entradas[i / DECISOES_POR_ENTRADA]);
+            legado.logicaControle(true);
+            SteamBoilerControl.logicaControle(true);
+            if (ControleLegado.atualModo != SteamBoilerControl.atualModo
+                    || ControleLegado.ligadaBomba1 != SteamBoilerControl.ligadaBomba1
+                    || ControleLegado.ligadaBomba2 != SteamBoilerControl.ligadaBomba2) divergencias++;
+        }
+        if (divergencias != 0) {
+            System.out.println("ControleLegado diverge de logicaControle em " + divergencias + " decisões");
+        }
+
+        // Só as decisões são cronometradas, em lotes de DECISOES_POR_ENTRADA; as entradas são
+        // publicadas entre os lotes, fora da medição
+        for (int rodada = 0; rodada < 3; rodada++) { // as duas primeiras só aquecem
+            reinicia(inicial);
+            long separados = 0;
+            for (int i = 0; i < DECISOES_CUSTO / DECISOES_POR_ENTRADA; i++) {
+                publicaLegado(entradas[i % ENTRADAS]);
+                long t0 = System.nanoTime();
+                for (int j = 0; j < DECISOES_POR_ENTRADA; j++) legado.logicaControle(true);
+                separados += System.nanoTime() - t0;
+            }
+            long empacotado = 0;
+            for (int i = 0; i < DECISOES_CUSTO / DECISOES_POR_ENTRADA; i++) {
+                publicaEmpacotado(entradas[i % ENTRADAS]);
+                long t0 = System.nanoTime();
+                for (int j = 0; j < DECISOES_POR_ENTRADA; j++) SteamBoilerControl.logicaControle(true);
+                empacotado += System.nanoTime() - t0;
+            }
+            if (rodada == 2) {
+                System.out.printf("Custo de uma decisão: %.2fns com os campos volatile separados, %.2fns com uma " +
+                                  "palavra (uma leitura, guardada num campo comum, e as bombas publicadas no fim)%n",
+                                  separados / (double) DECISOES_CUSTO, empacotado / (double) DECISOES_CUSTO);
+            }
+        }
+    }
+
+    static void reinicia(long inicial) {
+        ControleLegado.reinicia();
+        SteamBoilerControl.estado.set(inicial);
+        SteamBoilerControl.atualModo = SteamBoilerControl.Mode.INICIALIZACAO;
+        SteamBoilerControl.ciclosEstabilizacao = 0;
+        SteamBoilerControl.ciclosModoEmergencia = 0;
+    }
+
+    // A mesma entrada nas duas formas; as bombas ficam como a última decisão deixou
+    static void publica(long entrada) {
+        publicaLegado(entrada);
+        publicaEmpacotado(entrada);
+    }
+
+    static void publicaEmpacotado(long entrada) {
+        SteamBoilerControl.estado.set(EstadoCaldeira.com(EstadoCaldeira.com(entrada,
+            EstadoCaldeira.LIGADA_BOMBA1, SteamBoilerControl.ligadaBomba1), EstadoCaldeira.LIGADA_BOMBA2, SteamBoilerControl.ligadaBomba2));
+    }
+
+    static void publicaLegado(long entrada) {
+        ControleLegado.nivelAgua = EstadoCaldeira.nivel(entrada);
+        ControleLegado.saidaVapor = EstadoCaldeira.vapor(entrada);
+        ControleLegado.funcionaBomba1 = EstadoCaldeira.tem(entrada, EstadoCaldeira.FUNCIONA_BOMBA1);
+        ControleLegado.funcionaBomba2 = EstadoCaldeira.tem(entrada, EstadoCaldeira.FUNCIONA_BOMBA2);
+        ControleLegado.funcionaSensorAgua = EstadoCaldeira.tem(entrada, EstadoCaldeira.FUNCIONA_SENSOR_AGUA);
+        ControleLegado.funcionaSensorVapor = EstadoCaldeira.tem(entrada, EstadoCaldeira.FUNCIONA_SENSOR_VAPOR);
+        ControleLegado.nivelEstimado = EstadoCaldeira.estimativa(entrada);
+        ControleLegado.incertezaEstimativa = EstadoCaldeira.incerteza(entrada);
+    }
+
+    static void junta(Thread t) {
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
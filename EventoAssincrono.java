@@ -0,0 +1,25 @@
+/**
+ * Evento que uma thread dispara para que um tratador rode logo, em outra thread e com a
+ * prioridade dada, sem que quem dispara espere por ele. Criado pelo ExecutorPeriodico:
+ * AsyncEvent com um BoundAsyncEventHandler no RTSJ, uma thread estacionada na JVM
+ * padrão. No modo virtual, imediato() roda o tratador na própria thread que dispara.
+ * Disparar não aloca nem bloqueia; cada disparo é uma execução do tratador.
+ */
+public abstract class EventoAssincrono {
+
+    /** Pede uma execução do tratador. */
+    abstract void dispara();
+
+    /** Libera a thread do tratador, se houver uma própria. */
+    void encerra() {
+    }
+
+    /** Evento que roda o tratador na hora, na thread que dispara. */
+    static EventoAssincrono imediato(final Runnable tratador) {
+        return new EventoAssincrono() {
+            void dispara() {
+                tratador.run();
+            }
+        };
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Modo frota: divide uma FrotaCaldeiras em fatias contíguas e dá a cada fatia a sua
+ * própria tarefa periódica de 1s (RealtimeThread no RTSJ, thread comum na JVM padrão;
+ * ver ExecutorPeriodico). A cada liberação a tarefa avança a física de todas as
+ * caldeiras da fatia e, a cada 5 liberações, roda antes a lógica de controle,
+ * repetindo a mesma intercalação 5:1 das duas threads do modo normal.
+ */
+public class ExecucaoFrota {
+
+    static final int TICKS_POR_CICLO = 5; // física a cada 1s, controle a cada 5s
+    static final int CICLOS = 30;
+    static final int ALINHAMENTO_FATIA = 64; // 64 caldeiras: 64 bytes nos arrays de byte e boolean, 256 nos de int
+
+    static class FatiaFrota extends TarefaPeriodica {
+        final FrotaCaldeiras frota;
+        final int inicio;
+        final int fim;
+        long tempoOcupadoNs = 0; // só a própria thread escreve; lido após o fim do executor
+
+        FatiaFrota(FrotaCaldeiras frota, int inicio, int fim, int numero) {
+            super("fatia " + numero, 20, 1000000000L, 1000000000L, CICLOS * TICKS_POR_CICLO);
+            this.frota = frota;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        void liberacao(int tick) {
+            long t0 = System.nanoTime();
+            frota.aplicaLeiturasPendentes(inicio, fim); // de um GatewaySensores, se houver
+            if (tick % TICKS_POR_CICLO == 0) {
+                aplicaFalhas(frota, tick / TICKS_POR_CICLO, inicio, fim);
+                frota.logicaControle(inicio, fim);
+            }
+            frota.atualizaSistemaFisico(inicio, fim);
+            tempoOcupadoNs += System.nanoTime() - t0;
+        }
+    }
+
+    public static void executa(int caldeiras, int fatias, ExecutorPeriodico executor) {
+        System.out.println("MODO FROTA: " + caldeiras + " caldeiras em " + fatias + " fatias");
+        System.out.println(executor.descricao());
+
+        double capacidade = medeCapacidade(Math.min(caldeiras, 4096), 200);
+        System.out.printf("Capacidade medida: %.0f ciclos-caldeira/s por núcleo (%.0f caldeiras por núcleo no período de 5s)%n",
+                          capacidade, capacidade * 5);
+
+        FrotaCaldeiras frota = new FrotaCaldeiras(caldeiras);
+        espalhaNiveisIniciais(frota);
+
+        FatiaFrota[] tarefas = new FatiaFrota[fatias];
+        for (int f = 0; f < fatias; f++) {
+            tarefas[f] = new FatiaFrota(frota, limiteFatia(caldeiras, fatias, f), limiteFatia(caldeiras, fatias, f + 1), f);
+        }
+
+        try {
+            executor.executa(tarefas);
+        } catch (InterruptedException e) {
+            System.out.println("Thread interrompida: " + e.getMessage());
+        }
+
+        long tempoOcupadoNs = 0;
+        for (FatiaFrota t : tarefas) tempoOcupadoNs += t.tempoOcupadoNs;
+        long ciclosCaldeira = (long) caldeiras * CICLOS;
+        System.out.println("\nFROTA CONCLUÍDA: " + ciclosCaldeira + " ciclos-caldeira em " +
+                          (tempoOcupadoNs / 1000000) + "ms de CPU");
+        if (tempoOcupadoNs > 0) {
+            System.out.printf("Vazão observada: %.0f ciclos-caldeira/s por núcleo%n", ciclosCaldeira * 1e9 / tempoOcupadoNs);
+        }
+        int[] modos = frota.contaModos(0, caldeiras);
+        SteamBoilerControl.Mode[] nomes = SteamBoilerControl.Mode.values();
+        for (int m = 0; m < modos.length; m++) {
+            System.out.println("  " + nomes[m] + ": " + modos[m] + " caldeiras");
+        }
+    }
+
+    /**
+     * Mede, sem períodos, quantos ciclos-caldeira (uma decisão de controle mais cinco
+     * passos de física) um núcleo consegue executar por segundo.
+     */
+    static double medeCapacidade(int caldeiras, int ciclos) {
+        FrotaCaldeiras frota = new FrotaCaldeiras(caldeiras);
+        espalhaNiveisIniciais(frota);
+        rodaCiclos(frota, ciclos); // aquecimento do JIT
+        espalhaNiveisIniciais(frota);
+        long t0 = System.nanoTime();
+        rodaCiclos(frota, ciclos);
+        long decorrido = System.nanoTime() - t0;
+        return (double) caldeiras * ciclos * 1e9 / decorrido;
+    }
+
+    static void rodaCiclos(FrotaCaldeiras frota, int ciclos) {
+        for (int ciclo = 1; ciclo <= ciclos; ciclo++) {
+            for (int tick = 1; tick < TICKS_POR_CICLO; tick++) {
+                frota.atualizaSistemaFisico(0, frota.tamanho);
+            }
+            aplicaFalhas(frota, ciclo % CICLOS, 0, frota.tamanho);
+            frota.logicaControle(0, frota.tamanho);
+            frota.atualizaSistemaFisico(0, frota.tamanho);
+        }
+    }
+
+    /** Níveis iniciais distribuídos entre M1 e M2 para que a frota exercite todos os modos. */
+    static void espalhaNiveisIniciais(FrotaCaldeiras frota) {
+        int faixa = FrotaCaldeiras.M2 - FrotaCaldeiras.M1 - 1;
+        for (int c = 0; c < frota.tamanho; c++) {
+            frota.reinicia(c, FrotaCaldeiras.M1 + 1 + (int) ((c * 7919L) % faixa));
+        }
+    }
+
+    /** Mesmo roteiro de falhas do modo normal, aplicado a todas as caldeiras da fatia. */
+    static void aplicaFalhas(FrotaCaldeiras frota, int ciclo, int inicio, int fim) {
+        for (int c = inicio; c < fim; c++) {
+            if (ciclo == 10) frota.funcionaBomba1[c] = false;
+            if (ciclo == 15) frota.funcionaSensorAgua[c] = false;
+            if (ciclo == 20) frota.funcionaBomba1[c] = true;
+            if (ciclo == 25) frota.funcionaSensorAgua[c] = true;
+            if (ciclo == 26) frota.funcionaBomba1[c] = false;
+        }
+    }
+
+    /**
+     * Limite da fatia f. Com pelo menos ALINHAMENTO_FATIA caldeiras por fatia, o limite da
+     * divisão igual é arredondado para baixo até um múltiplo de ALINHAMENTO_FATIA, o tamanho
+     * de uma linha de cache no array mais estreito. Como dois limites sem arredondar distam
+     * pelo menos ALINHAMENTO_FATIA, cada fatia fica com pelo menos ALINHAMENTO_FATIA caldeiras,
+     * e a última com até ALINHAMENTO_FATIA - 1 a mais que as outras. Com menos caldeiras por
+     * fatia a divisão é igual, sem alinhamento, para não deixar fatias vazias. Os dados de um
+     * array não começam no início de uma linha (vêm depois do cabeçalho do objeto, que só é
+     * alinhado em 8 bytes), então cada fronteira ainda divide no máximo uma linha por array
+     * entre as duas fatias vizinhas, tocada só pelas caldeiras das pontas.
+     */
+    static int limiteFatia(int caldeiras, int fatias, int f) {
+        if (f >= fatias) return caldeiras;
+        int limite = (int) ((long) caldeiras * f / fatias);
+        if (caldeiras / fatias >= ALINHAMENTO_FATIA) limite -= limite % ALINHAMENTO_FATIA;
+        return limite;
+    }
+}
@@ -0,0 +1,171 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Liberação periódica em uma JVM padrão. Cada tarefa vira uma Thread comum que calcula
+ * o instante absoluto de cada liberação a partir do início comum (início + n × período,
+ * então um despertar atrasado não empurra os seguintes), dorme com LockSupport.parkNanos
+ * até esperaAtivaNs antes dele e passa o resto girando em System.nanoTime(), para não
+ * depender da precisão do despertar do sistema operacional. Uma espera ativa de 0 só
+ * dorme.
+ *
+ * Como a HotSpot normalmente ignora as prioridades das threads, a ordem de liberações
+ * coincidentes é imposta aqui: no instante em que uma tarefa de prioridade maior também é
+ * liberada, a de prioridade menor espera (estacionada) que ela conclua essa liberação, e
+ * quem conclui acorda as de prioridade menor. Assim o controle e a física se sucedem como
+ * sob o escalonador de prioridades do RTSJ, e a trajetória é a do modo virtual.
+ *
+ * Sem escalonador de tempo real não há manipuladores: ao fim de cada liberação, um
+ * tempo de execução acima do custo conta como estouro e um fim depois do período como
+ * perda de prazo. Uma liberação atrasada roda assim que possível e as seguintes voltam
+ * à grade de liberações. Cada evento tem uma thread que fica estacionada até um disparo
+ * (LockSupport.unpark).
+ */
+public class ExecutorPadrao extends ExecutorPeriodico {
+
+    static final long ESPERA_ATIVA_PADRAO_NS = 200000; // 200us, acima do atraso típico de despertar no Linux
+
+    final long esperaAtivaNs;
+
+    // Tarefas em execução, suas threads e o número da última liberação concluída por cada uma
+    private TarefaPeriodica[] tarefas;
+    private Thread[] threads;
+    private AtomicIntegerArray concluidas;
+
+    ExecutorPadrao(long esperaAtivaNs) {
+        this.esperaAtivaNs = esperaAtivaNs;
+    }
+
+    void executa(TarefaPeriodica... tarefas) throws InterruptedException {
+        final long inicioNs = System.nanoTime() + ATRASO_INICIO_NS;
+        this.tarefas = tarefas;
+        threads = new Thread[tarefas.length];
+        concluidas = new AtomicIntegerArray(tarefas.length);
+        for (int i = 0; i < tarefas.length; i++) {
+            final TarefaPeriodica tarefa = tarefas[i];
+            final int indice = i;
+            tarefa.instrumentacao = new InstrumentacaoPeriodica(tarefa.nome, inicioNs, tarefa.periodoNs);
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    executaTarefa(indice, inicioNs);
+                }
+            }, tarefa.nome);
+            // Indicativa: no Linux a HotSpot normalmente ignora as prioridades, e a ordem das
+            // liberações coincidentes vem de esperaPrioritarias
+            threads[i].setPriority(Math.min(Thread.MAX_PRIORITY, Thread.NORM_PRIORITY + tarefa.prioridade / 10));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+    }
+
+    void executaTarefa(int indice, long inicioNs) {
+        TarefaPeriodica tarefa = tarefas[indice];
+        InstrumentacaoPeriodica instrumentacao = tarefa.instrumentacao;
+        tarefa.inicio();
+        for (int n = 1; n <= tarefa.liberacoes; n++) {
+            long liberacao = inicioNs + n * tarefa.periodoNs;
+            esperaAte(liberacao);
+            esperaPrioritarias(indice, n);
+            long inicio = System.nanoTime();
+            instrumentacao.inicioLiberacao(inicio);
+            tarefa.liberacao(n);
+            long fim = System.nanoTime();
+            concluida(indice, n);
+            instrumentacao.fimLiberacao(fim);
+            if (fim - inicio > tarefa.custoNs) instrumentacao.registraEstouroCusto();
+            if (fim - (liberacao + tarefa.periodoNs) > 0) instrumentacao.registraPerdaPrazo();
+        }
+        tarefa.fim();
+    }
+
+    /**
+     * Espera que cada tarefa de prioridade maior liberada no mesmo instante que a liberação
+     * n da tarefa dada conclua essa liberação.
+     */
+    void esperaPrioritarias(int indice, int n) {
+        TarefaPeriodica tarefa = tarefas[indice];
+        long desdeInicio = n * tarefa.periodoNs;
+        for (int j = 0; j < tarefas.length; j++) {
+            TarefaPeriodica outra = tarefas[j];
+            if (outra.prioridade <= tarefa.prioridade || desdeInicio % outra.periodoNs != 0) continue;
+            long liberacaoOutra = desdeInicio / outra.periodoNs;
+            if (liberacaoOutra > outra.liberacoes) continue;
+            while (concluidas.get(j) < liberacaoOutra) {
+                LockSupport.park(this); // quem conclui acorda; volta ao laço em despertares espúrios
+            }
+        }
+    }
+
+    // Publica a liberação concluída e acorda as tarefas de prioridade menor que possam estar esperando
+    void concluida(int indice, int n) {
+        concluidas.set(indice, n);
+        int prioridade = tarefas[indice].prioridade;
+        for (int j = 0; j < tarefas.length; j++) {
+            if (tarefas[j].prioridade < prioridade) LockSupport.unpark(threads[j]);
+        }
+    }
+
+    /** Dorme até esperaAtivaNs antes do instante e gira até ele. */
+    void esperaAte(long instanteNs) {
+        long falta;
+        while ((falta = instanteNs - System.nanoTime()) > esperaAtivaNs) {
+            LockSupport.parkNanos(falta - esperaAtivaNs); // pode acordar antes; o laço volta a dormir
+        }
+        while (instanteNs - System.nanoTime() > 0) {
+            // cauda de espera ativa
+        }
+    }
+
+    EventoAssincrono criaEvento(String nome, int prioridade, Runnable tratador) {
+        EventoThread evento = new EventoThread(nome, tratador);
+        evento.thread.setPriority(Math.min(Thread.MAX_PRIORITY, Thread.NORM_PRIORITY + prioridade / 10));
+        evento.thread.start();
+        return evento;
+    }
+
+    /** Evento tratado por uma thread própria, estacionada enquanto não há disparos pendentes. */
+    static class EventoThread extends EventoAssincrono implements Runnable {
+        final Runnable tratador;
+        final Thread thread;
+        private final AtomicInteger pendentes = new AtomicInteger();
+        private volatile boolean ativo = true;
+
+        EventoThread(String nome, Runnable tratador) {
+            this.tratador = tratador;
+            thread = new Thread(this, nome);
+            thread.setDaemon(true);
+        }
+
+        void dispara() {
+            pendentes.incrementAndGet();
+            LockSupport.unpark(thread);
+        }
+
+        public void run() {
+            while (ativo) {
+                if (pendentes.get() == 0) {
+                    LockSupport.park(this); // volta ao laço também em despertares espúrios
+                    continue;
+                }
+                pendentes.decrementAndGet();
+                tratador.run();
+            }
+        }
+
+        void encerra() {
+            ativo = false;
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    String descricao() {
+        return "JVM padrão: " + System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version") +
+               ", liberações por parkNanos com " + esperaAtivaNs / 1000 + "us de espera ativa";
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Forma de liberar as tarefas periódicas: ExecutorRTSJ, com RealtimeThread e
+ * waitForNextPeriod() em uma VM de tempo real, ou ExecutorPadrao, com threads comuns
+ * em qualquer JVM. As tarefas (TarefaPeriodica) são as mesmas nos dois.
+ *
+ * Só ExecutorRTSJ usa javax.realtime, e ele só é carregado quando escolhido, então o
+ * programa roda em uma JVM sem as classes RTSJ.
+ */
+public abstract class ExecutorPeriodico {
+
+    static final long ATRASO_INICIO_NS = 1000000000L; // todas as tarefas começam 1s depois de criadas
+
+    /**
+     * Cria uma thread por tarefa, libera todas a partir do mesmo instante (a liberação n
+     * de cada uma em início + n × período) e espera que terminem.
+     */
+    abstract void executa(TarefaPeriodica... tarefas) throws InterruptedException;
+
+    /**
+     * Cria um evento cujo tratador roda com a prioridade dada (na mesma escala de
+     * TarefaPeriodica.prioridade) cada vez que o evento é disparado.
+     */
+    abstract EventoAssincrono criaEvento(String nome, int prioridade, Runnable tratador);
+
+    /** Descrição da VM e do executor, mostrada no início da execução. */
+    abstract String descricao();
+
+    /** Se a VM oferece as classes RTSJ. */
+    static boolean rtsjDisponivel() {
+        try {
+            Class.forName("javax.realtime.RealtimeThread");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * O executor RTSJ quando a VM o oferece e a JVM padrão não foi pedida; senão, o da
+     * JVM padrão com a cauda de espera ativa dada.
+     */
+    static ExecutorPeriodico escolhe(boolean padrao, long esperaAtivaNs) {
+        if (padrao || !rtsjDisponivel()) return new ExecutorPadrao(esperaAtivaNs);
+        return new ExecutorRTSJ();
+    }
+}
@@ -0,0 +1,117 @@
+import javax.realtime.PriorityScheduler;
+import javax.realtime.PriorityParameters;
+import javax.realtime.PeriodicParameters;
+import javax.realtime.RelativeTime;
+import javax.realtime.RealtimeThread;
+import javax.realtime.Clock;
+import javax.realtime.AbsoluteTime;
+import javax.realtime.AsyncEventHandler;
+import javax.realtime.AsyncEvent;
+import javax.realtime.BoundAsyncEventHandler;
+
+/**
+ * Liberação periódica pelo RTSJ: cada tarefa vira uma RealtimeThread com prioridade
+ * acima da mínima do PriorityScheduler e PeriodicParameters com o início comum, o
+ * período, o custo e prazo igual ao período, liberada por waitForNextPeriod(). Os
+ * manipuladores de estouro de custo e de perda de prazo contam o ocorrido na
+ * instrumentação da tarefa. Os eventos são AsyncEvents com um BoundAsyncEventHandler
+ * (thread própria, sem a espera por uma thread livre do pool de tratadores).
+ */
+public class ExecutorRTSJ extends ExecutorPeriodico {
+
+    void executa(TarefaPeriodica... tarefas) throws InterruptedException {
+        // Início comum, para que as liberações de tarefas com períodos múltiplos coincidam
+        AbsoluteTime inicio = Clock.getRealtimeClock().getTime().add(ATRASO_INICIO_NS / 1000000, 0);
+        long inicioNs = inicio.getMilliseconds() * 1000000L + inicio.getNanoseconds();
+        RealtimeThread[] threads = new RealtimeThread[tarefas.length];
+        for (int i = 0; i < tarefas.length; i++) {
+            threads[i] = cria(tarefas[i], inicio, inicioNs);
+        }
+        for (RealtimeThread t : threads) t.start();
+        for (RealtimeThread t : threads) t.join();
+    }
+
+    static RealtimeThread cria(final TarefaPeriodica tarefa, AbsoluteTime inicio, long inicioNs) {
+        final InstrumentacaoPeriodica instrumentacao =
+            tarefa.instrumentacao = new InstrumentacaoPeriodica(tarefa.nome, inicioNs, tarefa.periodoNs);
+        ManipuladorPrazo perda = new ManipuladorPrazo(instrumentacao, true);
+        ManipuladorPrazo estouro = new ManipuladorPrazo(instrumentacao, false);
+        RelativeTime periodo = relativo(tarefa.periodoNs);
+        PeriodicParameters periodoParams = new PeriodicParameters(inicio, periodo, relativo(tarefa.custoNs), periodo,
+                                                                  estouro, perda);
+        PriorityParameters prioridadeParams =
+            new PriorityParameters(PriorityScheduler.instance().getMinPriority() + tarefa.prioridade);
+
+        RealtimeThread thread = new RealtimeThread(prioridadeParams, periodoParams) {
+            public void run() {
+                AbsoluteTime agora = new AbsoluteTime(); // reutilizado em todas as medições
+                tarefa.inicio();
+                for (int n = 1; n <= tarefa.liberacoes; n++) {
+                    waitForNextPeriod();
+                    instrumentacao.inicioLiberacao(instanteNs(agora));
+                    tarefa.liberacao(n);
+                    instrumentacao.fimLiberacao(instanteNs(agora));
+                }
+                tarefa.fim();
+            }
+        };
+        perda.thread = thread;
+        return thread;
+    }
+
+    EventoAssincrono criaEvento(String nome, int prioridade, final Runnable tratador) {
+        final AsyncEvent evento = new AsyncEvent();
+        PriorityParameters prioridadeParams =
+            new PriorityParameters(PriorityScheduler.instance().getMinPriority() + prioridade);
+        evento.addHandler(new BoundAsyncEventHandler(prioridadeParams, null, null, null, null, false, null) {
+            public void handleAsyncEvent() {
+                tratador.run();
+            }
+        });
+        return new EventoAssincrono() {
+            void dispara() {
+                evento.fire();
+            }
+        };
+    }
+
+    static RelativeTime relativo(long ns) {
+        return new RelativeTime(ns / 1000000, (int) (ns % 1000000));
+    }
+
+    // Instante atual do relógio de tempo real em ns, sem alocar (t é reutilizado pela thread)
+    static long instanteNs(AbsoluteTime t) {
+        Clock.getRealtimeClock().getTime(t);
+        return t.getMilliseconds() * 1000000L + t.getNanoseconds();
+    }
+
+    /**
+     * Manipulador de perda de prazo ou de estouro de custo: só conta o ocorrido na
+     * instrumentação. Na perda de prazo o RTSJ deixa a thread fora da escala até que
+     * schedulePeriodic() seja chamado, então o manipulador a devolve à escala.
+     */
+    static class ManipuladorPrazo extends AsyncEventHandler {
+        final InstrumentacaoPeriodica instrumentacao;
+        final boolean perdaPrazo;
+        volatile RealtimeThread thread;
+
+        ManipuladorPrazo(InstrumentacaoPeriodica instrumentacao, boolean perdaPrazo) {
+            this.instrumentacao = instrumentacao;
+            this.perdaPrazo = perdaPrazo;
+        }
+
+        public void handleAsyncEvent() {
+            if (perdaPrazo) {
+                instrumentacao.registraPerdaPrazo();
+                if (thread != null) thread.schedulePeriodic();
+            } else {
+                instrumentacao.registraEstouroCusto();
+            }
+        }
+    }
+
+    String descricao() {
+        return "JamaicaVM Version: " + System.getProperty("java.vm.version") + "\n" +
+               "RTSJ Implementation: " + System.getProperty("javax.realtime.version");
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Frota de caldeiras: mesma lógica de controle e simulação de SteamBoilerControl,
+ * mas com o estado de cada caldeira guardado em tabelas de primitivos (um array por
+ * variável, indexado pela caldeira). Assim uma única JVM supervisiona milhares de
+ * caldeiras, e cada thread periódica percorre um intervalo contíguo [inicio, fim).
+ *
+ * Não faz saída no console: quem executa a frota decide o que mostrar.
+ *
+ * Contrato de threads: os arrays de estado de uma caldeira só são lidos e escritos pela
+ * thread da fatia que a contém, sem sincronização. A única entrada de outra thread é
+ * publicaLeitura (a thread do GatewaySensores), que escreve só em leituraPendente; a fatia
+ * traz a leitura para os arrays em aplicaLeiturasPendentes.
+ */
+public class FrotaCaldeiras {
+
+    // Parâmetros da caldeira (os mesmos de SteamBoilerControl)
+    static final int C = SteamBoilerControl.C;
+    static final int M1 = SteamBoilerControl.M1;
+    static final int M2 = SteamBoilerControl.M2;
+    static final int N1 = SteamBoilerControl.N1;
+    static final int N2 = SteamBoilerControl.N2;
+    static final int V = SteamBoilerControl.V;
+    static final int P = SteamBoilerControl.P;
+
+    // Modos de operação, na mesma ordem de SteamBoilerControl.Mode
+    static final byte INICIALIZACAO = 0;
+    static final byte NORMAL = 1;
+    static final byte DEGRADADO = 2;
+    static final byte SALVAMENTO = 3;
+    static final byte PARADA_EMERGENCIA = 4;
+
+    final int tamanho;
+
+    // Estado do sistema, uma posição por caldeira
+    final int[] nivelAgua;
+    final int[] saidaVapor;
+    final boolean[] funcionaBomba1;
+    final boolean[] funcionaBomba2;
+    final boolean[] funcionaSensorAgua;
+    final boolean[] funcionaSensorVapor;
+    final byte[] atualModo;
+    final int[] nivelEstimado;        // observador de nível (ver ObservadorNivel)
+    final int[] incertezaEstimativa;
+
+    // Controle das bombas
+    final boolean[] ligadaBomba1;
+    final boolean[] ligadaBomba2;
+
+    // Contadores para controle de transições
+    final int[] ciclosEstabilizacao;
+    final int[] ciclosModoEmergencia;
+
+    // No modo salvamento, controla pelo nível estimado enquanto a incerteza permite
+    boolean usaObservador = true;
+
+    // Última leitura externa de cada caldeira ainda não aplicada (0 = nenhuma), empacotada em
+    // um long: publicada com uma escrita ordenada pela thread do gateway e retirada pela fatia
+    final AtomicLongArray leituraPendente;
+    static final long LEITURA_PENDENTE = 1L << 40;
+
+    // Decide na hora quando o passo de física leva o nível visto para uma faixa mais perto de
+    // M1 ou M2 (ver SteamBoilerControl.cruzamento); na frota a decisão roda na mesma thread.
+    // Desligada por padrão, como em SteamBoilerControl
+    boolean decisaoPorEvento = false;
+
+    FrotaCaldeiras(int tamanho) {
+        this.tamanho = tamanho;
+        nivelAgua = new int[tamanho];
+        saidaVapor = new int[tamanho];
+        funcionaBomba1 = new boolean[tamanho];
+        funcionaBomba2 = new boolean[tamanho];
+        funcionaSensorAgua = new boolean[tamanho];
+        funcionaSensorVapor = new boolean[tamanho];
+        atualModo = new byte[tamanho];
+        nivelEstimado = new int[tamanho];
+        incertezaEstimativa = new int[tamanho];
+        ligadaBomba1 = new boolean[tamanho];
+        ligadaBomba2 = new boolean[tamanho];
+        ciclosEstabilizacao = new int[tamanho];
+        ciclosModoEmergencia = new int[tamanho];
+        leituraPendente = new AtomicLongArray(tamanho);
+        for (int c = 0; c < tamanho; c++) {
+            reinicia(c, 500);
+        }
+    }
+
+    /** Coloca a caldeira c no estado inicial de SteamBoilerControl, com o nível dado. */
+    void reinicia(int c, int nivelInicial) {
+        nivelAgua[c] = nivelInicial;
+        saidaVapor[c] = V;
+        funcionaBomba1[c] = true;
+        funcionaBomba2[c] = true;
+        funcionaSensorAgua[c] = true;
+        funcionaSensorVapor[c] = true;
+        atualModo[c] = INICIALIZACAO;
+        nivelEstimado[c] = nivelInicial;
+        incertezaEstimativa[c] = 0;
+        ligadaBomba1[c] = false;
+        ligadaBomba2[c] = false;
+        ciclosEstabilizacao[c] = 0;
+        ciclosModoEmergencia[c] = 0;
+    }
+
+    void logicaControle(int inicio, int fim) {
+        for (int c = inicio; c < fim; c++) {
+            logicaControle(c);
+        }
+    }
+
+    /** Mesma decisão de logicaControle, tirada de TabelaDecisao: custo constante por caldeira. */
+    void logicaControleTabela(int inicio, int fim) {
+        for (int c = inicio; c < fim; c++) {
+            // Bits na ordem de EstadoCaldeira: falhas nos 4 primeiros, bombas ligadas nos 2 seguintes
+            int componentes = (funcionaBomba1[c] ? 1 : 0) | (funcionaBomba2[c] ? 2 : 0)
+                            | (funcionaSensorAgua[c] ? 4 : 0) | (funcionaSensorVapor[c] ? 8 : 0)
+                            | (ligadaBomba1[c] ? 16 : 0) | (ligadaBomba2[c] ? 32 : 0);
+            int entrada = TabelaDecisao.decide(atualModo[c], nivelAgua[c], saidaVapor[c], nivelEstimado[c],
+                                               usaObservador ? incertezaEstimativa[c] : ObservadorNivel.INCERTEZA_MAXIMA,
+                                               componentes, ciclosEstabilizacao[c], ciclosModoEmergencia[c],
+                                               TabelaDecisao.CICLO_PERIODICO);
+            atualModo[c] = (byte) TabelaDecisao.modo(entrada);
+            ligadaBomba1[c] = (entrada & TabelaDecisao.LIGADA_BOMBA1) != 0;
+            ligadaBomba2[c] = (entrada & TabelaDecisao.LIGADA_BOMBA2) != 0;
+            ciclosEstabilizacao[c] = TabelaDecisao.estabilizacao(entrada, ciclosEstabilizacao[c]);
+            ciclosModoEmergencia[c] = TabelaDecisao.emergencia(entrada, ciclosModoEmergencia[c]);
+        }
+    }
+
+    void atualizaSistemaFisico(int inicio, int fim) {
+        for (int c = inicio; c < fim; c++) {
+            atualizaSistemaFisico(c);
+        }
+    }
+
+    void logicaControle(int c) {
+        logicaControle(c, true);
+    }
+
+    // Como SteamBoilerControl.logicaControle(periodica): os contadores só avançam no ciclo periódico
+    void logicaControle(int c, boolean periodica) {
+        int nivel = nivelAgua[c];
+        boolean estaNivelEmergencia = (nivel <= M1 || nivel >= M2);
+
+        switch (atualModo[c]) {
+            case INICIALIZACAO:
+                if (nivel < N1) {
+                    ligadaBomba1[c] = funcionaBomba1[c];
+                    ligadaBomba2[c] = funcionaBomba2[c];
+                } else if (nivel > N2) {
+                    ligadaBomba1[c] = false;
+                    ligadaBomba2[c] = false;
+                } else {
+                    ligadaBomba1[c] = funcionaBomba1[c] && (nivel < (N1 + N2) / 2);
+                    ligadaBomba2[c] = false;
+                }
+
+                if (periodica) ciclosEstabilizacao[c]++;
+                if (ciclosEstabilizacao[c] >= 3) {
+                    if (estaNivelEmergencia) {
+                        atualModo[c] = PARADA_EMERGENCIA;
+                        ciclosModoEmergencia[c] = 0;
+                    } else if (checaIntegridadeSistema(c)) {
+                        atualModo[c] = NORMAL;
+                        ciclosEstabilizacao[c] = 0;
+                    } else if (!funcionaSensorAgua[c]) {
+                        atualModo[c] = SALVAMENTO;
+                        ciclosEstabilizacao[c] = 0;
+                    } else if (!funcionaBomba1[c] || !funcionaBomba2[c]) {
+                        atualModo[c] = DEGRADADO;
+                        ciclosEstabilizacao[c] = 0;
+                    }
+                }
+                break;
+
+            case NORMAL:
+                if (estaNivelEmergencia) {
+                    atualModo[c] = PARADA_EMERGENCIA;
+                    ciclosModoEmergencia[c] = 0;
+                } else if (!funcionaSensorAgua[c]) {
+                    atualModo[c] = SALVAMENTO;
+                } else if (!funcionaBomba1[c] || !funcionaBomba2[c]) {
+                    atualModo[c] = DEGRADADO;
+                } else {
+                    controleBombas_TudoBem(c);
+                }
+                break;
+
+            case DEGRADADO:
+                if (estaNivelEmergencia) {
+                    atualModo[c] = PARADA_EMERGENCIA;
+                    ciclosModoEmergencia[c] = 0;
+                } else if (!funcionaSensorAgua[c]) {
+                    atualModo[c] = SALVAMENTO;
+                } else if (funcionaBomba1[c] && funcionaBomba2[c]) {
+                    atualModo[c] = NORMAL;
+                } else {
+                    controleBombas_BombaComFalha(c);
+                }
+                break;
+
+            case SALVAMENTO:
+                if (estaNivelEmergencia) {
+                    atualModo[c] = PARADA_EMERGENCIA;
+                    ciclosModoEmergencia[c] = 0;
+                } else if (funcionaSensorAgua[c]) {
+                    atualModo[c] = (funcionaBomba1[c] && funcionaBomba2[c]) ? NORMAL : DEGRADADO;
+                } else {
+                    controleBombas_SemSensor(c);
+                }
+                break;
+
+            case PARADA_EMERGENCIA:
+                if (nivel <= M1) {
+                    // Nível muito baixo, tenta recuperar ligando tudo que funciona
+                    if (funcionaBomba1[c]) ligadaBomba1[c] = true;
+                    if (funcionaBomba2[c]) ligadaBomba2[c] = true;
+                    if (nivel > M1 + 20) {
+                        if (periodica) ciclosModoEmergencia[c]++;
+                        if (ciclosModoEmergencia[c] >= 2) {
+                            atualModo[c] = INICIALIZACAO;
+                            ciclosModoEmergencia[c] = 0;
+                            ciclosEstabilizacao[c] = 0;
+                        }
+                    } else {
+                        ciclosModoEmergencia[c] = 0;
+                    }
+                } else if (nivel >= M2) {
+                    // Nível muito alto - desligar tudo
+                    ligadaBomba1[c] = false;
+                    ligadaBomba2[c] = false;
+                    if (nivel < M2 - 20) {
+                        if (periodica) ciclosModoEmergencia[c]++;
+                        if (ciclosModoEmergencia[c] >= 2) {
+                            atualModo[c] = INICIALIZACAO;
+                            ciclosModoEmergencia[c] = 0;
+                            ciclosEstabilizacao[c] = 0;
+                        }
+                    } else {
+                        ciclosModoEmergencia[c] = 0;
+                    }
+                } else {
+                    atualModo[c] = INICIALIZACAO;
+                    ciclosModoEmergencia[c] = 0;
+                    ciclosEstabilizacao[c] = 0;
+                }
+                break;
+        }
+    }
+
+    boolean checaIntegridadeSistema(int c) {
+        int nivel = nivelAgua[c];
+        boolean nivelAguaSeguro = (nivel > M1 + 50 && nivel < M2 - 50);
+        boolean tudoFunciona = (funcionaSensorAgua[c] && funcionaSensorVapor[c] &&
+                            (funcionaBomba1[c] || funcionaBomba2[c]));
+        return nivelAguaSeguro && tudoFunciona;
+    }
+
+    void controleBombas_TudoBem(int c) {
+        int nivel = nivelAgua[c];
+        if (nivel < N1) {
+            ligadaBomba1[c] = true;
+            ligadaBomba2[c] = true;
+        } else if (nivel > N2) {
+            ligadaBomba1[c] = false;
+            ligadaBomba2[c] = false;
+        } else if (nivel < (N1 + N2) / 2) {
+            ligadaBomba1[c] = true;
+            ligadaBomba2[c] = false;
+        } else {
+            ligadaBomba1[c] = false;
+            ligadaBomba2[c] = false;
+        }
+    }
+
+    void controleBombas_BombaComFalha(int c) {
+        int nivel = nivelAgua[c];
+        boolean bomba1 = funcionaBomba1[c];
+        boolean bomba2 = funcionaBomba2[c];
+        if (nivel < N1) {
+            ligadaBomba1[c] = bomba1;
+            ligadaBomba2[c] = bomba2;
+        } else if (nivel > N2) {
+            ligadaBomba1[c] = false;
+            ligadaBomba2[c] = false;
+        } else if (bomba1 || bomba2) {
+            // Nível médio - usar uma bomba se disponível, a 1 tem preferência
+            ligadaBomba1[c] = bomba1;
+            ligadaBomba2[c] = !bomba1;
+        }
+    }
+
+    void controleBombas_SemSensor(int c) {
+        if (usaObservador && ObservadorNivel.confiavel(incertezaEstimativa[c])) {
+            controleBombas_Estimativa(c);
+            return;
+        }
+        int vapor = saidaVapor[c];
+        if (vapor < 50) {
+            if (funcionaBomba1[c]) ligadaBomba1[c] = true;
+            if (funcionaBomba2[c]) ligadaBomba2[c] = true;
+        } else if (vapor > 75) {
+            ligadaBomba1[c] = false;
+            ligadaBomba2[c] = false;
+        } else if (funcionaBomba1[c]) {
+            ligadaBomba1[c] = true;
+            ligadaBomba2[c] = false;
+        } else if (funcionaBomba2[c]) {
+            ligadaBomba1[c] = false;
+            ligadaBomba2[c] = true;
+        }
+    }
+
+    void controleBombas_Estimativa(int c) {
+        int estimativa = nivelEstimado[c];
+        boolean bomba1 = funcionaBomba1[c];
+        if (estimativa < N1) {
+            ligadaBomba1[c] = bomba1;
+            ligadaBomba2[c] = funcionaBomba2[c];
+        } else if (estimativa > N2) {
+            ligadaBomba1[c] = false;
+            ligadaBomba2[c] = false;
+        } else {
+            ligadaBomba1[c] = bomba1;
+            ligadaBomba2[c] = !bomba1 && funcionaBomba2[c];
+        }
+    }
+
+    void atualizaSistemaFisico(int c) {
+        int faixaAnterior = decisaoPorEvento ? SteamBoilerControl.faixaCruzamento(nivelVisto(c)) : 0;
+        int entradaAgua = 0;
+        if (ligadaBomba1[c] && funcionaBomba1[c]) entradaAgua += P;
+        if (ligadaBomba2[c] && funcionaBomba2[c]) entradaAgua += P;
+
+        int nivel = nivelAgua[c] + entradaAgua - saidaVapor[c];
+        if (nivel < 0) nivel = 0;
+        if (nivel > C) nivel = C;
+        nivelAgua[c] = nivel;
+
+        int observado = ObservadorNivel.passo(nivelEstimado[c], incertezaEstimativa[c], entradaAgua, saidaVapor[c],
+                                              funcionaSensorAgua[c], funcionaSensorVapor[c], nivel);
+        nivelEstimado[c] = ObservadorNivel.estimativa(observado);
+        incertezaEstimativa[c] = ObservadorNivel.incerteza(observado);
+
+        if (nivel < 200) saidaVapor[c] = 40;
+        else if (nivel > 800) saidaVapor[c] = 80;
+        else saidaVapor[c] = V;
+
+        if (decisaoPorEvento && SteamBoilerControl.agrava(faixaAnterior, SteamBoilerControl.faixaCruzamento(nivelVisto(c)))) {
+            logicaControle(c, false);
+        }
+    }
+
+    /**
+     * Leitura de sensores recebida de fora (GatewaySensores) para a caldeira c, chamada na
+     * thread do gateway; a saúde tem os bits de SteamBoilerControl.aplicaLeitura. Só deixa a
+     * leitura pendente, com uma escrita ordenada (lazySet) do long inteiro: uma leitura mais
+     * nova substitui a que a fatia ainda não aplicou.
+     */
+    void publicaLeitura(int c, int nivel, int vapor, int saude) {
+        leituraPendente.lazySet(c, LEITURA_PENDENTE | (long) saude << 32 | vapor << 16 | nivel);
+    }
+
+    /**
+     * Aplica as leituras pendentes das caldeiras do intervalo; só a thread da fatia chama.
+     * Devolve quantas foram aplicadas.
+     */
+    int aplicaLeiturasPendentes(int inicio, int fim) {
+        int aplicadas = 0;
+        for (int c = inicio; c < fim; c++) {
+            if (leituraPendente.get(c) == 0) continue;
+            long leitura = leituraPendente.getAndSet(c, 0);
+            aplicaLeitura(c, (int) leitura & 0xFFFF, (int) (leitura >>> 16) & 0xFFFF, (int) (leitura >>> 32) & 0xFF);
+            aplicadas++;
+        }
+        return aplicadas;
+    }
+
+    // A leitura no lugar do passo de física da caldeira c. Não decide na hora: a decisão
+    // fica com o ciclo da fatia
+    void aplicaLeitura(int c, int nivel, int vapor, int saude) {
+        int entradaAgua = 0;
+        if (ligadaBomba1[c] && funcionaBomba1[c]) entradaAgua += P;
+        if (ligadaBomba2[c] && funcionaBomba2[c]) entradaAgua += P;
+        nivelAgua[c] = nivel;
+        saidaVapor[c] = vapor;
+        funcionaBomba1[c] = (saude & 1) != 0;
+        funcionaBomba2[c] = (saude & 2) != 0;
+        funcionaSensorAgua[c] = (saude & 4) != 0;
+        funcionaSensorVapor[c] = (saude & 8) != 0;
+
+        int observado = ObservadorNivel.passo(nivelEstimado[c], incertezaEstimativa[c], entradaAgua, vapor,
+                                              funcionaSensorAgua[c], funcionaSensorVapor[c], nivel);
+        nivelEstimado[c] = ObservadorNivel.estimativa(observado);
+        incertezaEstimativa[c] = ObservadorNivel.incerteza(observado);
+    }
+
+    /** Nível que o controle enxerga: o do sensor, ou a estimativa quando o sensor de água falha. */
+    int nivelVisto(int c) {
+        return funcionaSensorAgua[c] ? nivelAgua[c] : nivelEstimado[c];
+    }
+
+    /** Quantas caldeiras do intervalo estão em cada modo, indexado pelo código do modo. */
+    int[] contaModos(int inicio, int fim) {
+        int[] contagem = new int[PARADA_EMERGENCIA + 1];
+        for (int c = inicio; c < fim; c++) {
+            contagem[atualModo[c]]++;
+        }
+        return contagem;
+    }
+}
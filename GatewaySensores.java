@@ -0,0 +1,264 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+
+/**
+ * Entrada de leituras de sensores vindas de fora do programa, para que a física simulada
+ * seja só uma das fontes do estado. Uma thread atende, com um único Selector, um canal UDP
+ * (cada datagrama leva um lote de quadros) e conexões TCP (um fluxo de quadros), todos não
+ * bloqueantes. Os quadros são decodificados em lote direto do buffer direto de recepção,
+ * por posição absoluta, sem criar objetos por quadro, e cada quadro válido é publicado em
+ * SteamBoilerControl.aplicaLeitura (só a caldeira 0, por compareAndSet no estado
+ * empacotado) ou em FrotaCaldeiras.publicaLeitura (escrita ordenada por caldeira, que a
+ * fatia da caldeira aplica no seu próximo passo).
+ *
+ * Quadro de 16 bytes, little-endian:
+ *
+ *   0  caldeira (int)
+ *   4  sequência (int), por caldeira, começando em 1
+ *   8  nível de água em litros (unsigned short)
+ *  10  saída de vapor em litros/s (unsigned short)
+ *  12  saúde (byte): bits 0-3 = bomba 1, bomba 2, sensor de água e sensor de vapor funcionando
+ *  13  versão do formato (byte, VERSAO)
+ *  14  época (unsigned short): a fonte a incrementa cada vez que recomeça a sequência
+ *
+ * Um quadro com versão ou caldeira desconhecida, valores fora da faixa, época anterior à
+ * última aceita da caldeira ou, na mesma época, sequência que não seja maior que a última
+ * aceita (repetido ou fora de ordem) é descartado e contado. Um quadro de época mais nova é
+ * aceito com qualquer sequência e passa a ser a referência, então uma fonte que reinicia e
+ * volta a contar de 1 não perde quadros até alcançar a sequência antiga. Épocas e
+ * sequências são comparadas com transbordo, como os números de sequência do TCP. Os
+ * contadores só são escritos pela thread do gateway.
+ */
+public class GatewaySensores implements Runnable {
+
+    static final int TAMANHO_QUADRO = 16;
+    static final int VERSAO = 1;
+    static final int QUADROS_POR_DATAGRAMA = 64;   // 1 KB, bem abaixo do MTU de loopback
+    static final int PORTA_PADRAO = 4750;
+
+    static final int POS_CALDEIRA = 0;
+    static final int POS_SEQUENCIA = 4;
+    static final int POS_NIVEL = 8;
+    static final int POS_VAPOR = 10;
+    static final int POS_SAUDE = 12;
+    static final int POS_VERSAO = 13;
+    static final int POS_EPOCA = 14;
+
+    static final int MAXIMO_CONEXOES = 64;
+    static final int TAMANHO_BUFFER_TCP = 64 * 1024;
+    static final int BUFFER_SOCKET = 4 * 1024 * 1024; // absorve rajadas enquanto a thread não é escalonada
+
+    final FrotaCaldeiras frota;   // null: as leituras vão para SteamBoilerControl
+    final int caldeiras;
+    private final int[] ultimaSequencia;
+    private final short[] ultimaEpoca;
+
+    private final Selector selector;
+    private final DatagramChannel udp;
+    private final ServerSocketChannel tcp;
+    private final SelectionKey chaveUdp;
+    private final SelectionKey chaveTcp;
+    // Conexões TCP abertas, em um array fixo para percorrer sem iterador
+    private final SelectionKey[] conexoes = new SelectionKey[MAXIMO_CONEXOES];
+    private int numeroConexoes;
+    // Cabe o maior datagrama UDP, então nenhum é truncado
+    private final ByteBuffer recepcao = ByteBuffer.allocateDirect(65536).order(ByteOrder.LITTLE_ENDIAN);
+
+    private Thread thread;
+    private volatile boolean ativo = true;
+
+    long quadros;       // aceitos e publicados
+    long descartados;   // inválidos, repetidos ou fora de ordem (e restos de datagrama)
+    long reinicios;     // quadros aceitos por trazerem uma época mais nova
+    long datagramas;
+    long leiturasTcp;
+    long primeiroNs;    // início do primeiro lote e fim do último lote decodificados
+    volatile long ultimoNs;
+    long bytesAlocados = -1; // pela thread do gateway, quando a JVM mede
+
+    /** Abre os canais UDP e TCP na porta dada (0 = escolhida pelo sistema). */
+    GatewaySensores(int porta, FrotaCaldeiras frota) throws IOException {
+        this.frota = frota;
+        this.caldeiras = frota == null ? 1 : frota.tamanho;
+        ultimaSequencia = new int[caldeiras];
+        ultimaEpoca = new short[caldeiras];
+        selector = Selector.open();
+        udp = DatagramChannel.open();
+        udp.setOption(StandardSocketOptions.SO_RCVBUF, BUFFER_SOCKET);
+        udp.bind(new InetSocketAddress(porta));
+        udp.configureBlocking(false);
+        chaveUdp = udp.register(selector, SelectionKey.OP_READ);
+        tcp = ServerSocketChannel.open();
+        tcp.bind(new InetSocketAddress(porta()));
+        tcp.configureBlocking(false);
+        chaveTcp = tcp.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int porta() throws IOException {
+        return ((InetSocketAddress) udp.getLocalAddress()).getPort();
+    }
+
+    void inicia() {
+        thread = new Thread(this, "gateway de sensores");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /** Para a thread, espera que ela termine e fecha os canais. */
+    void encerra() throws IOException {
+        ativo = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey k : selector.keys()) k.channel().close();
+        selector.close();
+    }
+
+    public void run() {
+        boolean mede = OrcamentoAlocacao.disponivel();
+        long antes = mede ? OrcamentoAlocacao.alocados() : 0;
+        try {
+            while (ativo) {
+                // Cada chave pronta é tirada do conjunto de selecionadas e atendida, procurando-a
+                // pelas chaves conhecidas em vez de percorrer o conjunto com um iterador (que seria
+                // criado a cada despertar). O Selector ainda cria um nó de HashSet cada vez que põe
+                // uma chave no conjunto, uma vez por despertar e não por quadro.
+                selector.select(100);
+                Set<SelectionKey> prontas = selector.selectedKeys();
+                if (prontas.remove(chaveTcp)) aceita();
+                if (prontas.remove(chaveUdp)) recebeDatagramas();
+                for (int i = numeroConexoes - 1; i >= 0; i--) {
+                    if (prontas.remove(conexoes[i])) leConexao(i);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[gateway] erro de E/S: " + e.getMessage());
+        }
+        if (mede) bytesAlocados = OrcamentoAlocacao.alocados() - antes;
+    }
+
+    // Lê todos os datagramas pendentes; bytes que não formam um quadro inteiro são descartados
+    void recebeDatagramas() throws IOException {
+        while (true) {
+            recepcao.clear();
+            if (udp.receive(recepcao) == null) return;
+            recepcao.flip();
+            datagramas++;
+            decodifica(recepcao);
+            if (recepcao.hasRemaining()) descartados++;
+        }
+    }
+
+    void aceita() throws IOException {
+        SocketChannel conexao;
+        while ((conexao = tcp.accept()) != null) {
+            if (numeroConexoes == MAXIMO_CONEXOES) {
+                conexao.close();
+                System.out.println("[gateway] conexão recusada: já há " + MAXIMO_CONEXOES + " abertas");
+                continue;
+            }
+            conexao.configureBlocking(false);
+            conexao.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            // Um buffer por conexão, porque um quadro pode chegar dividido entre leituras
+            conexoes[numeroConexoes++] = conexao.register(selector, SelectionKey.OP_READ,
+                ByteBuffer.allocateDirect(TAMANHO_BUFFER_TCP).order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    void leConexao(int i) throws IOException {
+        SelectionKey k = conexoes[i];
+        SocketChannel conexao = (SocketChannel) k.channel();
+        ByteBuffer buffer = (ByteBuffer) k.attachment();
+        int lidos;
+        while ((lidos = conexao.read(buffer)) > 0) {
+            leiturasTcp++;
+            buffer.flip();
+            decodifica(buffer);
+            buffer.compact(); // o quadro incompleto vai para o início
+        }
+        if (lidos < 0) {
+            if (buffer.position() > 0) descartados++; // terminou no meio de um quadro
+            k.cancel();
+            conexao.close();
+            conexoes[i] = conexoes[--numeroConexoes];
+            conexoes[numeroConexoes] = null;
+        }
+    }
+
+    /**
+     * Publica os quadros inteiros entre a posição e o limite do buffer, lidos por posição
+     * absoluta, e deixa a posição no primeiro byte que sobrou.
+     */
+    void decodifica(ByteBuffer b) {
+        int p = b.position();
+        int fim = b.limit();
+        if (fim - p < TAMANHO_QUADRO) return;
+        if (quadros == 0) primeiroNs = System.nanoTime();
+        for (; fim - p >= TAMANHO_QUADRO; p += TAMANHO_QUADRO) {
+            int caldeira = b.getInt(p + POS_CALDEIRA);
+            int sequencia = b.getInt(p + POS_SEQUENCIA);
+            int nivel = b.getShort(p + POS_NIVEL) & 0xFFFF;
+            int vapor = b.getShort(p + POS_VAPOR) & 0xFFFF;
+            int saude = b.get(p + POS_SAUDE);
+            short epoca = b.getShort(p + POS_EPOCA);
+            if (b.get(p + POS_VERSAO) != VERSAO || caldeira < 0 || caldeira >= caldeiras
+                    || nivel > SteamBoilerControl.C || vapor > EstadoCaldeira.MASCARA_VALOR || (saude & ~0xF) != 0) {
+                descartados++;
+                continue;
+            }
+            int avancoEpoca = (short) (epoca - ultimaEpoca[caldeira]); // com transbordo, em 16 bits
+            if (avancoEpoca < 0 || (avancoEpoca == 0 && sequencia - ultimaSequencia[caldeira] <= 0)) {
+                descartados++;
+                continue;
+            }
+            if (avancoEpoca > 0) {
+                ultimaEpoca[caldeira] = epoca;
+                reinicios++;
+            }
+            ultimaSequencia[caldeira] = sequencia;
+            if (frota == null) SteamBoilerControl.aplicaLeitura(nivel, vapor, saude);
+            else frota.publicaLeitura(caldeira, nivel, vapor, saude);
+            quadros++;
+        }
+        b.position(p);
+        ultimoNs = System.nanoTime();
+    }
+
+    /** Escreve um quadro na posição p do buffer (usado por quem gera quadros de teste). */
+    static void escreveQuadro(ByteBuffer b, int p, int caldeira, int epoca, int sequencia, int nivel, int vapor,
+                              int saude) {
+        b.putInt(p + POS_CALDEIRA, caldeira);
+        b.putInt(p + POS_SEQUENCIA, sequencia);
+        b.putShort(p + POS_NIVEL, (short) nivel);
+        b.putShort(p + POS_VAPOR, (short) vapor);
+        b.put(p + POS_SAUDE, (byte) saude);
+        b.put(p + POS_VERSAO, (byte) VERSAO);
+        b.putShort(p + POS_EPOCA, (short) epoca);
+    }
+
+    void imprime() {
+        double segundos = (ultimoNs - primeiroNs) / 1e9;
+        System.out.printf("[gateway] %d quadros aceitos (%d com época nova), %d descartados, %d datagramas, %d leituras TCP%n",
+                          quadros, reinicios, descartados, datagramas, leiturasTcp);
+        if (segundos > 0) {
+            System.out.printf("[gateway] %.0f quadros/s entre o primeiro e o último quadro (%.3fs)%n",
+                              quadros / segundos, segundos);
+        }
+        if (bytesAlocados >= 0 && quadros > 0) {
+            System.out.printf("[gateway] %d B alocados pela thread do gateway (%.4f B/quadro)%n",
+                              bytesAlocados, (double) bytesAlocados / quadros);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.io.IOException;
+
+/**
+ * Gravação das decisões do controle: a cada logicaControle, as entradas exatas que a
+ * decisão viu (o estado empacotado carregado, o modo e os contadores) e o que ela
+ * produziu (bombas, novo modo e contadores), em um registro de 32 bytes de um
+ * ArquivoRegistros. ReproducaoControle passa as gravações de volta pelo controle.
+ *
+ * Registro (little-endian): estado de entrada (8), estabilização de entrada (4),
+ * emergência de entrada (4), estabilização de saída (4), emergência de saída (4),
+ * modo de entrada (1), modo de saída (1), bombas ligadas na saída (1, bit 0 = bomba 1),
+ * opções (1, OPCAO_*), reservado (4).
+ */
+public class GravacaoControle extends ArquivoRegistros {
+
+    static final long MAGICO = 0x31434544444C4143L; // "CALDDEC1" em little-endian
+    static final int VERSAO = 1;
+    static final int TAMANHO_REGISTRO = 32;
+
+    // Posições dentro de cada registro
+    static final int POS_ESTADO = 0;
+    static final int POS_ESTABILIZACAO = 8;
+    static final int POS_EMERGENCIA = 12;
+    static final int POS_ESTABILIZACAO_SAIDA = 16;
+    static final int POS_EMERGENCIA_SAIDA = 20;
+    static final int POS_MODO = 24;
+    static final int POS_MODO_SAIDA = 25;
+    static final int POS_BOMBAS_SAIDA = 26;
+    static final int POS_OPCOES = 27;
+
+    // Opções em vigor na decisão
+    static final int OPCAO_OBSERVADOR = 1;
+    static final int OPCAO_TABELA = 2;
+    static final int OPCAO_CRUZAMENTO = 4; // decisão por cruzamento de faixa, fora do ciclo periódico
+
+    GravacaoControle(String caminho) throws IOException {
+        super(caminho, MAGICO, VERSAO, TAMANHO_REGISTRO);
+    }
+
+    /**
+     * Grava uma decisão já tomada: as entradas são passadas por quem decidiu, as saídas
+     * são lidas dos campos de SteamBoilerControl.
+     */
+    void registra(long estado, int modo, int estabilizacao, int emergencia, boolean periodica) {
+        int p = proximo();
+        trecho.putLong(p + POS_ESTADO, estado);
+        trecho.putInt(p + POS_ESTABILIZACAO, estabilizacao);
+        trecho.putInt(p + POS_EMERGENCIA, emergencia);
+        trecho.putInt(p + POS_ESTABILIZACAO_SAIDA, SteamBoilerControl.ciclosEstabilizacao);
+        trecho.putInt(p + POS_EMERGENCIA_SAIDA, SteamBoilerControl.ciclosModoEmergencia);
+        trecho.put(p + POS_MODO, (byte) modo);
+        trecho.put(p + POS_MODO_SAIDA, (byte) SteamBoilerControl.atualModo.ordinal());
+        trecho.put(p + POS_BOMBAS_SAIDA, (byte) ((SteamBoilerControl.ligadaBomba1 ? 1 : 0)
+                                               | (SteamBoilerControl.ligadaBomba2 ? 2 : 0)));
+        trecho.put(p + POS_OPCOES, (byte) ((SteamBoilerControl.usaObservador ? OPCAO_OBSERVADOR : 0)
+                                         | (SteamBoilerControl.decisaoPorTabela ? OPCAO_TABELA : 0)
+                                         | (periodica ? 0 : OPCAO_CRUZAMENTO)));
+        confirma();
+    }
+}
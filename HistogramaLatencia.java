@@ -0,0 +1,74 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de tempos em nanossegundos com faixas de tamanho fixo: valores até 15ns
+ * têm faixa própria e, acima disso, cada potência de 2 é dividida em 8 faixas (erro
+ * máximo de 12,5%). O array de contagens é alocado uma única vez; registrar um valor
+ * não aloca, não bloqueia e custa algumas instruções.
+ *
+ * Feito para um único escritor (a thread periódica medida); qualquer thread pode ler
+ * os percentis enquanto o histograma é atualizado.
+ */
+public class HistogramaLatencia {
+
+    static final int SUBFAIXAS = 8;
+    static final int FAIXAS = 16 + (63 - 4) * SUBFAIXAS;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(FAIXAS);
+    private volatile long maximo = 0;
+    private volatile long total = 0;
+
+    /** Registra um valor; valores negativos contam como zero. Só o escritor pode chamar. */
+    void registra(long ns) {
+        if (ns < 0) ns = 0;
+        int i = faixa(ns);
+        contagens.lazySet(i, contagens.get(i) + 1);
+        if (ns > maximo) maximo = ns;
+        total = total + 1;
+    }
+
+    static int faixa(long ns) {
+        if (ns < 16) return (int) ns;
+        int expoente = 63 - Long.numberOfLeadingZeros(ns);
+        int sub = (int) (ns >>> (expoente - 3)) & (SUBFAIXAS - 1);
+        return 16 + (expoente - 4) * SUBFAIXAS + sub;
+    }
+
+    /** Maior valor que cai na faixa i. */
+    static long limiteSuperior(int i) {
+        if (i < 16) return i;
+        int expoente = (i - 16) / SUBFAIXAS + 4;
+        long sub = (i - 16) % SUBFAIXAS;
+        long largura = 1L << (expoente - 3);
+        return (SUBFAIXAS + sub) * largura + largura - 1;
+    }
+
+    long total() {
+        return total;
+    }
+
+    long maximo() {
+        return maximo;
+    }
+
+    /** Valor abaixo do qual está a fração p (0 a 1) das amostras, limitado ao máximo observado. */
+    long percentil(double p) {
+        long n = total;
+        if (n == 0) return 0;
+        long alvo = (long) Math.ceil(p * n);
+        if (alvo < 1) alvo = 1;
+        long acumulado = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            acumulado += contagens.get(i);
+            if (acumulado >= alvo) return Math.min(limiteSuperior(i), maximo);
+        }
+        return maximo;
+    }
+
+    /** Resumo p50/p99/p99.9/max em microssegundos. */
+    String resumo() {
+        return String.format("n=%d p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                             total, percentil(0.50) / 1e3, percentil(0.99) / 1e3,
+                             percentil(0.999) / 1e3, maximo / 1e3);
+    }
+}
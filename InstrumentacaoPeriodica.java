@@ -0,0 +1,59 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instrumentação de uma thread periódica: atraso de cada liberação em relação ao início
+ * programado do período, tempo de execução de cada ciclo e contagem de perdas de prazo
+ * e estouros de custo. Os instantes são passados por quem mede, em nanossegundos do
+ * mesmo relógio usado para o início programado, para que a mesma instrumentação sirva
+ * a qualquer forma de liberação periódica.
+ *
+ * inicioLiberacao() e fimLiberacao() são chamados só pela própria thread; as perdas de
+ * prazo e os estouros podem ser registrados pelos manipuladores, em outra thread.
+ */
+public class InstrumentacaoPeriodica {
+
+    final String nome;
+    final long inicioNs;   // instante programado da liberação zero
+    final long periodoNs;
+
+    final HistogramaLatencia atraso = new HistogramaLatencia();
+    final HistogramaLatencia execucao = new HistogramaLatencia();
+    final AtomicLong perdasPrazo = new AtomicLong();
+    final AtomicLong estourosCusto = new AtomicLong();
+
+    private long liberacoes = 0;
+    private long inicioCiclo;
+
+    InstrumentacaoPeriodica(String nome, long inicioNs, long periodoNs) {
+        this.nome = nome;
+        this.inicioNs = inicioNs;
+        this.periodoNs = periodoNs;
+    }
+
+    /** Chamado logo após a thread ser liberada, com o instante atual. */
+    void inicioLiberacao(long agoraNs) {
+        liberacoes++;
+        atraso.registra(agoraNs - (inicioNs + liberacoes * periodoNs));
+        inicioCiclo = agoraNs;
+    }
+
+    /** Chamado ao fim do trabalho do ciclo, com o instante atual. */
+    void fimLiberacao(long agoraNs) {
+        execucao.registra(agoraNs - inicioCiclo);
+    }
+
+    void registraPerdaPrazo() {
+        perdasPrazo.incrementAndGet();
+    }
+
+    void registraEstouroCusto() {
+        estourosCusto.incrementAndGet();
+    }
+
+    void imprime() {
+        System.out.println("[" + nome + "] atraso da liberação: " + atraso.resumo());
+        System.out.println("[" + nome + "] tempo de execução:   " + execucao.resumo());
+        System.out.println("[" + nome + "] perdas de prazo: " + perdasPrazo.get() +
+                          ", estouros de custo: " + estourosCusto.get());
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Leitor de arquivos de TelemetriaMapeada sem cópia (ver LeituraRegistros): cada campo
+ * é lido direto da posição do registro no arquivo mapeado, sem criar objetos por
+ * registro. Assim uma varredura de gigabytes de histórico custa o tempo de ler as páginas.
+ */
+public class LeitorTelemetria {
+
+    // Faixas de nível da estatística: até M1, entre M1 e N1, normal, entre N2 e M2, a partir de M2
+    static final String[] NOMES_FAIXA = { "<= M1", "M1 - N1", "N1 - N2", "N2 - M2", ">= M2" };
+
+    final long registros;
+    private final LeituraRegistros arquivo;
+
+    LeitorTelemetria(String caminho) throws IOException {
+        arquivo = new LeituraRegistros(caminho, TelemetriaMapeada.MAGICO, TelemetriaMapeada.VERSAO,
+                                       TelemetriaMapeada.TAMANHO_REGISTRO);
+        registros = arquivo.registros;
+    }
+
+    long tempoNs(long i) {
+        return arquivo.segmento(i).getLong(arquivo.posicao(i) + TelemetriaMapeada.POS_TEMPO);
+    }
+
+    int nivel(long i) {
+        return arquivo.segmento(i).getShort(arquivo.posicao(i) + TelemetriaMapeada.POS_NIVEL);
+    }
+
+    int vapor(long i) {
+        return arquivo.segmento(i).getShort(arquivo.posicao(i) + TelemetriaMapeada.POS_VAPOR);
+    }
+
+    /** Bombas e sensores nos bits de EstadoCaldeira.componentes. */
+    int componentes(long i) {
+        return arquivo.segmento(i).get(arquivo.posicao(i) + TelemetriaMapeada.POS_COMPONENTES);
+    }
+
+    int modo(long i) {
+        return arquivo.segmento(i).get(arquivo.posicao(i) + TelemetriaMapeada.POS_MODO);
+    }
+
+    int estimativa(long i) {
+        return arquivo.segmento(i).getShort(arquivo.posicao(i) + TelemetriaMapeada.POS_ESTIMATIVA);
+    }
+
+    /** Varre todos os registros e mostra o tempo em cada faixa de nível e em cada modo. */
+    void mostraEstatisticas() {
+        long[] porFaixa = new long[NOMES_FAIXA.length];
+        long[] porModo = new long[SteamBoilerControl.Mode.values().length];
+        long semSensor = 0;
+        long erroEstimativa = 0;
+        int menor = Integer.MAX_VALUE;
+        int maior = Integer.MIN_VALUE;
+        long semSensorBit = EstadoCaldeira.FUNCIONA_SENSOR_AGUA >>> EstadoCaldeira.DESLOCAMENTO_COMPONENTES;
+
+        long t0 = System.nanoTime();
+        for (MappedByteBuffer b : arquivo.segmentos) {
+            int fim = b.limit();
+            for (int p = 0; p < fim; p += TelemetriaMapeada.TAMANHO_REGISTRO) {
+                // Uma leitura para os campos depois do instante (ver TelemetriaMapeada.registra)
+                long campos = b.getLong(p + TelemetriaMapeada.POS_NIVEL);
+                int nivel = (int) campos & 0xFFFF;
+                porFaixa[SteamBoilerControl.faixaNivel(nivel)]++;
+                porModo[(int) (campos >>> 40) & 0xFF]++;
+                if (((campos >>> 32) & semSensorBit) == 0) {
+                    semSensor++;
+                    erroEstimativa += Math.abs((int) (campos >>> 48) - nivel);
+                }
+                if (nivel < menor) menor = nivel;
+                if (nivel > maior) maior = nivel;
+            }
+        }
+        long decorrido = System.nanoTime() - t0;
+
+        long bytes = registros * TelemetriaMapeada.TAMANHO_REGISTRO;
+        System.out.printf("TELEMETRIA: %d registros (%.1fMB) lidos em %.1fms (%.0fMB/s)%n",
+                          registros, bytes / 1e6, decorrido / 1e6, bytes / 1e6 / (decorrido / 1e9));
+        if (registros == 0) return;
+        System.out.printf("Duração: %.1fs, nível entre %dL e %dL%n",
+                          (tempoNs(registros - 1) - tempoNs(0)) / 1e9, menor, maior);
+        System.out.println("Passos em cada faixa de nível:");
+        for (int f = 0; f < porFaixa.length; f++) {
+            System.out.printf("  %-8s %12d (%5.1f%%)%n", NOMES_FAIXA[f], porFaixa[f], 100.0 * porFaixa[f] / registros);
+        }
+        System.out.println("Passos em cada modo:");
+        SteamBoilerControl.Mode[] nomes = SteamBoilerControl.Mode.values();
+        for (int m = 0; m < porModo.length; m++) {
+            System.out.printf("  %-18s %12d (%5.1f%%)%n", nomes[m], porModo[m], 100.0 * porModo[m] / registros);
+        }
+        if (semSensor > 0) {
+            System.out.printf("Sensor de água em falha em %d passos, erro médio da estimativa %.1fL%n",
+                              semSensor, erroEstimativa / (double) semSensor);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Leitura sem cópia de um arquivo gravado por ArquivoRegistros: confere o cabeçalho e
+ * mapeia os registros em segmentos de até 1GB (para passar do limite de 2GB de um
+ * mapeamento). Os campos são lidos direto das posições de cada registro, sem criar
+ * objetos por registro.
+ */
+public class LeituraRegistros {
+
+    static final int BYTES_SEGMENTO = 1 << 30;
+
+    final long registros;
+    final int tamanhoRegistro;
+    final MappedByteBuffer[] segmentos;
+    private final int bitsSegmento;    // log2 de registros por segmento
+
+    LeituraRegistros(String caminho, long magico, int versao, int tamanhoRegistro) throws IOException {
+        this.tamanhoRegistro = tamanhoRegistro;
+        this.bitsSegmento = Integer.numberOfTrailingZeros(BYTES_SEGMENTO / tamanhoRegistro);
+        try (RandomAccessFile arquivo = new RandomAccessFile(caminho, "r")) {
+            FileChannel canal = arquivo.getChannel();
+            if (canal.size() < ArquivoRegistros.CABECALHO) {
+                throw new IOException(caminho + ": arquivo sem cabeçalho");
+            }
+            MappedByteBuffer cabecalho = canal.map(FileChannel.MapMode.READ_ONLY, 0, ArquivoRegistros.CABECALHO);
+            cabecalho.order(ByteOrder.LITTLE_ENDIAN);
+            if (cabecalho.getLong(ArquivoRegistros.POS_MAGICO) != magico
+                    || cabecalho.getInt(ArquivoRegistros.POS_VERSAO) != versao
+                    || cabecalho.getInt(ArquivoRegistros.POS_TAMANHO_REGISTRO) != tamanhoRegistro) {
+                throw new IOException(caminho + ": formato ou versão diferente do esperado");
+            }
+            long noArquivo = (canal.size() - ArquivoRegistros.CABECALHO) / tamanhoRegistro;
+            registros = Math.min(cabecalho.getLong(ArquivoRegistros.POS_REGISTROS), noArquivo);
+
+            long porSegmento = 1L << bitsSegmento;
+            segmentos = new MappedByteBuffer[(int) ((registros + porSegmento - 1) >>> bitsSegmento)];
+            for (int s = 0; s < segmentos.length; s++) {
+                long primeiro = (long) s << bitsSegmento;
+                long quantos = Math.min(porSegmento, registros - primeiro);
+                segmentos[s] = canal.map(FileChannel.MapMode.READ_ONLY,
+                                         ArquivoRegistros.CABECALHO + primeiro * tamanhoRegistro,
+                                         quantos * tamanhoRegistro);
+                segmentos[s].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    /** Segmento que contém o registro i. */
+    MappedByteBuffer segmento(long i) {
+        return segmentos[(int) (i >>> bitsSegmento)];
+    }
+
+    /** Posição do registro i dentro do seu segmento. */
+    int posicao(long i) {
+        return (int) (i & ((1L << bitsSegmento) - 1)) * tamanhoRegistro;
+    }
+}
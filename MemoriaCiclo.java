@@ -0,0 +1,40 @@
+import javax.realtime.LTMemory;
+
+/**
+ * Execução de cada ciclo de uma thread periódica dentro de uma memória de escopo
+ * (LTMemory) criada uma vez e reutilizada: o que o ciclo alocar é liberado de uma vez
+ * quando ele sai do escopo, sem trabalho para o coletor, e alocar no escopo custa tempo
+ * linear no tamanho. Os bytes consumidos no escopo a cada ciclo vão para um
+ * OrcamentoAlocacao.
+ *
+ * Dentro do escopo o ciclo não pode guardar em campos do heap uma referência a objeto
+ * alocado nele (a VM lança IllegalAssignmentError). O controle e a física só guardam
+ * primitivos, o estado empacotado e constantes de Mode; a telemetria e a gravação, que
+ * mapeiam trechos novos do arquivo, ficam fora das execuções em tempo real.
+ */
+public abstract class MemoriaCiclo implements Runnable {
+
+    static final long TAMANHO_ESCOPO = 64 * 1024; // folga larga: o ciclo não deve alocar nada
+
+    final LTMemory area = new LTMemory(TAMANHO_ESCOPO, TAMANHO_ESCOPO);
+    final OrcamentoAlocacao orcamento;
+    private int ciclo;
+
+    MemoriaCiclo(OrcamentoAlocacao orcamento) {
+        this.orcamento = orcamento;
+    }
+
+    /** O trabalho de um ciclo, executado dentro do escopo. */
+    abstract void ciclo(int ciclo);
+
+    /** Executa um ciclo dentro do escopo. Só a thread dona deve chamar. */
+    void executa(int ciclo) {
+        this.ciclo = ciclo;
+        area.enter(this);
+    }
+
+    public void run() {
+        ciclo(ciclo);
+        orcamento.registra(ciclo, area.memoryConsumed()); // antes de sair: na saída o escopo é esvaziado
+    }
+}
@@ -0,0 +1,227 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Métricas de operação da caldeira, atualizadas pelas threads de tempo real e lidas por
+ * qualquer thread: transições entre modos (de/para), tempo em cada modo, tempo com cada
+ * bomba comandada ligada e partidas, tempo de cada componente em falha e quantas vezes
+ * falhou, e nível de água mínimo e máximo por janela de JANELA_NS.
+ *
+ * Cada valor tem um único escritor por vez, então atualizar é uma leitura e um lazySet,
+ * sem CAS nem bloqueio. A faixa da decisão é escrita por quem tem o monitor
+ * SteamBoilerControl.decisao (o ciclo periódico ou a decisão por cruzamento); a da física,
+ * pela thread de física ou pelo gateway de sensores. As duas faixas ficam no mesmo array
+ * separadas por PREENCHIMENTO posições, para que as escritas de uma thread não invalidem
+ * a linha de cache da outra. Ler não interfere nos escritores; cada valor lido é
+ * consistente, mas um instantâneo não é atômico entre valores diferentes.
+ */
+public class MetricasCaldeira {
+
+    static final int MODOS = SteamBoilerControl.Mode.values().length;
+    static final int COMPONENTES = 4; // bomba 1, bomba 2, sensor de água e sensor de vapor
+    static final long JANELA_NS = 60000000000L; // mínimo e máximo do nível por minuto
+    static final int PREENCHIMENTO = 16; // 128 bytes, acima da linha de cache (e do prefetch de pares)
+
+    // Faixa da decisão
+    static final int DECISOES = PREENCHIMENTO;
+    static final int TRANSICOES = DECISOES + 1;               // [de * MODOS + para]
+    static final int TEMPO_MODO = TRANSICOES + MODOS * MODOS; // ns em cada modo
+    static final int TEMPO_BOMBA = TEMPO_MODO + MODOS;        // ns com cada bomba comandada ligada
+    static final int PARTIDAS_BOMBA = TEMPO_BOMBA + 2;
+    static final int INSTANTE_DECISAO = PARTIDAS_BOMBA + 2;   // da última decisão
+    static final int SAIDA_DECISAO = INSTANTE_DECISAO + 1;    // modo | BIT_BOMBA1 | BIT_BOMBA2 da última decisão
+
+    // Faixa da física
+    static final int PASSOS = SAIDA_DECISAO + 1 + PREENCHIMENTO;
+    static final int TEMPO_FALHA = PASSOS + 1;                // ns com cada componente em falha
+    static final int FALHAS = TEMPO_FALHA + COMPONENTES;      // quantas vezes cada um passou a falhar
+    static final int INSTANTE_PASSO = FALHAS + COMPONENTES;   // do último passo
+    static final int FUNCIONANDO_PASSO = INSTANTE_PASSO + 1;  // bits 0-3 de funcionamento no último passo
+    static final int JANELA_ATUAL = FUNCIONANDO_PASSO + 1;    // janela << 24 | mínimo << 12 | máximo
+    static final int JANELA_ANTERIOR = JANELA_ATUAL + 1;      // a última completa, no mesmo formato
+
+    static final int TAMANHO = JANELA_ANTERIOR + 1 + PREENCHIMENTO;
+
+    static final long BIT_BOMBA1 = 1 << 8;
+    static final long BIT_BOMBA2 = 1 << 9;
+
+    private final AtomicLongArray valores = new AtomicLongArray(TAMANHO);
+
+    MetricasCaldeira() {
+        valores.set(FUNCIONANDO_PASSO, 0xF); // tudo funciona antes do primeiro passo
+        valores.set(JANELA_ATUAL, -1);
+        valores.set(JANELA_ANTERIOR, -1);
+    }
+
+    // Soma do único escritor: sem CAS, publicada sem barreira completa
+    private void soma(int i, long valor) {
+        valores.lazySet(i, valores.get(i) + valor);
+    }
+
+    /**
+     * Uma decisão do controle no instante `agora`: o intervalo desde a decisão anterior
+     * conta no modo e nas bombas que ela deixou. Só com o monitor de decisão.
+     */
+    void registraDecisao(long agora, int modoEntrada, int modo, boolean bomba1, boolean bomba2) {
+        long anterior = valores.get(SAIDA_DECISAO);
+        if (valores.get(DECISOES) > 0) {
+            long decorrido = agora - valores.get(INSTANTE_DECISAO);
+            soma(TEMPO_MODO + (int) (anterior & 0xFF), decorrido);
+            if ((anterior & BIT_BOMBA1) != 0) soma(TEMPO_BOMBA, decorrido);
+            if ((anterior & BIT_BOMBA2) != 0) soma(TEMPO_BOMBA + 1, decorrido);
+        }
+        if (modo != modoEntrada) soma(TRANSICOES + modoEntrada * MODOS + modo, 1);
+        if (bomba1 && (anterior & BIT_BOMBA1) == 0) soma(PARTIDAS_BOMBA, 1);
+        if (bomba2 && (anterior & BIT_BOMBA2) == 0) soma(PARTIDAS_BOMBA + 1, 1);
+        valores.lazySet(INSTANTE_DECISAO, agora);
+        valores.lazySet(SAIDA_DECISAO, modo | (bomba1 ? BIT_BOMBA1 : 0) | (bomba2 ? BIT_BOMBA2 : 0));
+        soma(DECISOES, 1);
+    }
+
+    /**
+     * Um passo de física (ou uma leitura externa) que produziu `estado` no instante
+     * `agora`: o intervalo desde o passo anterior conta como falha para os componentes que
+     * estavam em falha, e o nível entra no mínimo e no máximo da janela. Só a thread que
+     * publica os passos.
+     */
+    void registraPasso(long agora, long estado) {
+        int funcionando = EstadoCaldeira.componentes(estado) & 0xF;
+        int anteriores = (int) valores.get(FUNCIONANDO_PASSO);
+        boolean primeiro = valores.get(PASSOS) == 0;
+        long decorrido = agora - valores.get(INSTANTE_PASSO);
+        for (int i = 0; i < COMPONENTES; i++) {
+            int bit = 1 << i;
+            if (!primeiro && (anteriores & bit) == 0) soma(TEMPO_FALHA + i, decorrido);
+            if ((anteriores & bit) != 0 && (funcionando & bit) == 0) soma(FALHAS + i, 1);
+        }
+        valores.lazySet(FUNCIONANDO_PASSO, funcionando);
+        valores.lazySet(INSTANTE_PASSO, agora);
+
+        int nivel = EstadoCaldeira.nivel(estado);
+        long janela = agora / JANELA_NS & 0xFFFFFFFFFFL; // 40 bits, acima de mínimo e máximo
+        long atual = valores.get(JANELA_ATUAL);
+        if (atual < 0 || atual >>> 24 != janela) {
+            if (atual >= 0) valores.lazySet(JANELA_ANTERIOR, atual);
+            atual = janela << 24 | nivel << 12 | nivel;
+        } else {
+            atual = janela << 24 | Math.min(minimo(atual), nivel) << 12 | Math.max(maximo(atual), nivel);
+        }
+        valores.lazySet(JANELA_ATUAL, atual);
+        soma(PASSOS, 1);
+    }
+
+    static int minimo(long janela) {
+        return (int) (janela >>> 12) & EstadoCaldeira.MASCARA_VALOR;
+    }
+
+    static int maximo(long janela) {
+        return (int) janela & EstadoCaldeira.MASCARA_VALOR;
+    }
+
+    /**
+     * Cópia de todos os valores em `agora`, com o intervalo desde a última decisão e o
+     * último passo já somado ao modo, às bombas e às falhas atuais. Aloca; é para a thread
+     * que publica as métricas, nunca para as de tempo real.
+     */
+    Instantaneo instantaneo(long agora) {
+        Instantaneo m = new Instantaneo();
+        m.decisoes = valores.get(DECISOES);
+        long saida = valores.get(SAIDA_DECISAO);
+        long desdeDecisao = m.decisoes == 0 ? 0 : Math.max(0, agora - valores.get(INSTANTE_DECISAO));
+        m.modo = (int) (saida & 0xFF);
+        for (int i = 0; i < MODOS * MODOS; i++) m.transicoes[i] = valores.get(TRANSICOES + i);
+        for (int i = 0; i < MODOS; i++) m.tempoModoNs[i] = valores.get(TEMPO_MODO + i);
+        m.tempoModoNs[m.modo] += desdeDecisao;
+        for (int b = 0; b < 2; b++) {
+            m.tempoBombaNs[b] = valores.get(TEMPO_BOMBA + b);
+            if ((saida & (b == 0 ? BIT_BOMBA1 : BIT_BOMBA2)) != 0) m.tempoBombaNs[b] += desdeDecisao;
+            m.partidasBomba[b] = valores.get(PARTIDAS_BOMBA + b);
+        }
+
+        m.passos = valores.get(PASSOS);
+        int funcionando = (int) valores.get(FUNCIONANDO_PASSO);
+        long desdePasso = m.passos == 0 ? 0 : Math.max(0, agora - valores.get(INSTANTE_PASSO));
+        for (int i = 0; i < COMPONENTES; i++) {
+            m.tempoFalhaNs[i] = valores.get(TEMPO_FALHA + i) + ((funcionando & 1 << i) == 0 ? desdePasso : 0);
+            m.falhas[i] = valores.get(FALHAS + i);
+        }
+        m.janelaAtual = valores.get(JANELA_ATUAL);
+        m.janelaAnterior = valores.get(JANELA_ANTERIOR);
+        m.instanteNs = agora;
+        return m;
+    }
+
+    /** Valores de um instante, sem ligação com as métricas vivas. */
+    static class Instantaneo {
+        static final String[] NOMES_COMPONENTES = { "bomba 1", "bomba 2", "sensor de água", "sensor de vapor" };
+
+        long instanteNs;
+        long decisoes;
+        int modo;
+        final long[] transicoes = new long[MODOS * MODOS];
+        final long[] tempoModoNs = new long[MODOS];
+        final long[] tempoBombaNs = new long[2];
+        final long[] partidasBomba = new long[2];
+        long passos;
+        final long[] tempoFalhaNs = new long[COMPONENTES];
+        final long[] falhas = new long[COMPONENTES];
+        long janelaAtual;    // -1 antes do primeiro passo
+        long janelaAnterior; // -1 antes de a primeira janela terminar
+
+        long tempoTotalNs() {
+            long total = 0;
+            for (long t : tempoModoNs) total += t;
+            return total;
+        }
+
+        /** Fração do tempo, desde a primeira decisão, com a bomba (0 ou 1) comandada ligada. */
+        double cicloTrabalho(int bomba) {
+            long total = tempoTotalNs();
+            return total == 0 ? 0 : (double) tempoBombaNs[bomba] / total;
+        }
+
+        long entradas(int modo) {
+            long n = 0;
+            for (int de = 0; de < MODOS; de++) n += transicoes[de * MODOS + modo];
+            return n;
+        }
+
+        /** Janela de mínimo e máximo a mostrar: a última completa, ou a atual se ainda não houver. */
+        long janela() {
+            return janelaAnterior >= 0 ? janelaAnterior : janelaAtual;
+        }
+
+        void imprime() {
+            SteamBoilerControl.Mode[] modos = SteamBoilerControl.Mode.values();
+            System.out.printf("[métricas] %d decisões, %d passos, modo atual %s%n", decisoes, passos, modos[modo]);
+            StringBuilder transicao = new StringBuilder();
+            for (int de = 0; de < MODOS; de++) {
+                for (int para = 0; para < MODOS; para++) {
+                    long n = transicoes[de * MODOS + para];
+                    if (n > 0) transicao.append(' ').append(modos[de]).append("->").append(modos[para]).append('=').append(n);
+                }
+            }
+            System.out.println("[métricas] transições:" + (transicao.length() == 0 ? " nenhuma" : transicao.toString()));
+            StringBuilder tempo = new StringBuilder();
+            for (int i = 0; i < MODOS; i++) {
+                tempo.append(' ').append(modos[i]).append('=').append(tempoModoNs[i] / 1000000000L).append('s');
+            }
+            System.out.println("[métricas] tempo em cada modo:" + tempo);
+            System.out.printf("[métricas] bombas: 1 ligada %.1f%% do tempo (%d partidas), 2 ligada %.1f%% (%d partidas)%n",
+                              100 * cicloTrabalho(0), partidasBomba[0], 100 * cicloTrabalho(1), partidasBomba[1]);
+            StringBuilder falha = new StringBuilder();
+            for (int i = 0; i < COMPONENTES; i++) {
+                if (falhas[i] > 0 || tempoFalhaNs[i] > 0) {
+                    falha.append(' ').append(NOMES_COMPONENTES[i]).append('=').append(tempoFalhaNs[i] / 1000000000L)
+                         .append("s (").append(falhas[i]).append("x)");
+                }
+            }
+            System.out.println("[métricas] tempo em falha:" + (falha.length() == 0 ? " nenhum" : falha.toString()));
+            long j = janela();
+            if (j >= 0) {
+                System.out.printf("[métricas] nível na %s janela de %ds: mínimo %dL, máximo %dL%n",
+                                  janelaAnterior >= 0 ? "última" : "primeira", JANELA_NS / 1000000000L,
+                                  minimo(j), maximo(j));
+            }
+        }
+    }
+}
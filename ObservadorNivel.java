@@ -0,0 +1,47 @@
+/**
+ * Observador do nível de água para o modo salvamento. A cada passo de física, enquanto
+ * o sensor de água funciona, a estimativa é a própria leitura (incerteza zero); quando
+ * ele falha, a estimativa parte da última leitura boa e integra a vazão comandada das
+ * bombas que funcionam menos o vapor medido, e a incerteza cresce a cada passo pelo erro
+ * possível do modelo. Com o sensor de vapor também em falha, o vapor é suposto V e a
+ * incerteza cresce mais rápido.
+ *
+ * O passo é uma conta de tamanho fixo sobre inteiros, sem alocação: serve tanto para a
+ * caldeira de SteamBoilerControl (dentro da palavra de EstadoCaldeira) quanto para as
+ * tabelas de FrotaCaldeiras.
+ */
+public class ObservadorNivel {
+
+    static final int INCERTEZA_PASSO = 2;           // erro de vazão por passo (L) com o vapor medido
+    static final int INCERTEZA_PASSO_SEM_VAPOR = 30; // vapor real entre 40 e 80, suposto V
+    static final int LIMITE_INCERTEZA = 150;        // acima disso a estimativa não serve para decidir
+    static final int INCERTEZA_MAXIMA = EstadoCaldeira.MASCARA_INCERTEZA;
+
+    /**
+     * Estimativa e incerteza depois de um passo, empacotadas como estimativa | incerteza << 16.
+     * entrada é a vazão das bombas ligadas que funcionam; vapor é a saída medida no passo.
+     */
+    static int passo(int estimativa, int incerteza, int entrada, int vapor,
+                     boolean sensorAgua, boolean sensorVapor, int nivelMedido) {
+        if (sensorAgua) return nivelMedido; // incerteza zero
+        int saida = sensorVapor ? vapor : SteamBoilerControl.V;
+        int nova = estimativa + entrada - saida;
+        if (nova < 0) nova = 0;
+        if (nova > SteamBoilerControl.C) nova = SteamBoilerControl.C;
+        incerteza += sensorVapor ? INCERTEZA_PASSO : INCERTEZA_PASSO_SEM_VAPOR;
+        return nova | Math.min(incerteza, INCERTEZA_MAXIMA) << 16;
+    }
+
+    static int estimativa(int observado) {
+        return observado & 0xFFFF;
+    }
+
+    static int incerteza(int observado) {
+        return observado >>> 16;
+    }
+
+    /** Se a estimativa ainda é boa o bastante para o controle usar. */
+    static boolean confiavel(int incerteza) {
+        return incerteza <= LIMITE_INCERTEZA;
+    }
+}
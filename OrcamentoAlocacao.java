@@ -0,0 +1,200 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Orçamento de alocação por ciclo de uma thread periódica: bytes alocados em cada ciclo,
+ * o maior, a média e quantos ciclos passaram do limite. Um único escritor (a própria
+ * thread), sem alocação ao registrar, para poder ser chamado de dentro de uma memória
+ * de escopo (MemoriaCiclo).
+ *
+ * executa() é o modo de diagnóstico: o cenário do modo virtual com os bytes alocados no
+ * heap medidos em cada ciclo de controle e em cada passo de física, pelo contador de
+ * alocação por thread da JVM. Falha (retorna false) se algum ciclo passar do limite.
+ * A medição só começa depois de um aquecimento que repete o cenário inteiro até estabilizar:
+ * ele carrega e inicializa as classes (na JamaicaVM isso é feito na construção da imagem)
+ * e deixa o compilador otimizador da HotSpot compilar todos os caminhos, inclusive os das
+ * falhas.
+ * Sem isso, uma desotimização no meio da medição (quando o código compilado encontra um
+ * caminho que não viu) recria na thread os objetos que a análise de escape tinha
+ * eliminado, e a medição dependia do momento em que o compilador terminava.
+ */
+public class OrcamentoAlocacao {
+
+    final String nome;
+    final long limite;   // bytes por ciclo
+
+    private long ciclos = 0;
+    private long total = 0;
+    private long maior = 0;
+    private long excedidos = 0;
+    private long primeiroExcedido = -1;
+    private long bytesPrimeiroExcedido;
+
+    OrcamentoAlocacao(String nome, long limite) {
+        this.nome = nome;
+        this.limite = limite;
+    }
+
+    /** Registra os bytes alocados no ciclo de número `ciclo`. */
+    void registra(long ciclo, long bytes) {
+        ciclos++;
+        total += bytes;
+        if (bytes > maior) maior = bytes;
+        if (bytes > limite) {
+            if (excedidos == 0) {
+                primeiroExcedido = ciclo;
+                bytesPrimeiroExcedido = bytes;
+            }
+            excedidos++;
+        }
+    }
+
+    boolean dentroDoOrcamento() {
+        return excedidos == 0;
+    }
+
+    void imprime() {
+        System.out.printf("%-9s %8d ciclos, média %.1f B/ciclo, maior %d B, limite %d B: %s%n",
+                          nome, ciclos, ciclos == 0 ? 0.0 : (double) total / ciclos, maior, limite,
+                          excedidos == 0 ? "dentro do orçamento"
+                                         : excedidos + " ciclos acima (o primeiro foi o " + primeiroExcedido +
+                                           ", com " + bytesPrimeiroExcedido + " B)");
+    }
+
+    // Contador de bytes alocados pela thread atual, quando a JVM oferece um
+    private static final com.sun.management.ThreadMXBean threads =
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean
+            ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+    /** Se a JVM mede os bytes alocados por thread (liga a medição, se preciso). */
+    static boolean disponivel() {
+        if (threads == null || !threads.isThreadAllocatedMemorySupported()) return false;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return true;
+    }
+
+    static long alocados() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** O que a própria medição aloca (algumas JVMs criam um array por consulta). */
+    static long custoMedicao() {
+        long menor = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long a = alocados();
+            menor = Math.min(menor, alocados() - a);
+        }
+        return menor;
+    }
+
+    /**
+     * Roda `ciclos` ciclos de controle do cenário do modo virtual medindo a alocação de
+     * cada ciclo de controle e de cada passo de física. Antes da medição o cenário inteiro
+     * (falhas e reparos dos ciclos 10 a 26 incluídos) roda sem medir, recomeçando do estado
+     * inicial, em blocos de PASSADAS_POR_BLOCO passadas, até um bloco não alocar nada e o
+     * compilador não terminar nenhuma compilação durante ele; a medição também recomeça do
+     * estado inicial. Os eventos continuam ligados e são descartados entre os ciclos, fora
+     * da medição.
+     */
+    static boolean executa(int ciclos, long limite) {
+        if (!disponivel()) {
+            System.out.println("Esta JVM não mede a alocação por thread; use o modo escopo para medir pela LTMemory");
+            return false;
+        }
+        System.out.println("ALOCAÇÃO: " + ciclos + " ciclos de controle, limite de " + limite + " B por ciclo");
+        SteamBoilerControl.telemetria = null;
+        SteamBoilerControl.gravacao = null;
+        SteamBoilerControl.cruzamento = SteamBoilerControl.decisaoPorEvento
+            ? EventoAssincrono.imediato(SteamBoilerControl.decisaoPorCruzamento) : null;
+
+        long custo = custoMedicao();
+        // Aquece em blocos até um bloco inteiro rodar sem alocar e sem o compilador terminar
+        // nada; com a CPU disputada, a compilação em segundo plano demora mais passadas
+        long antesAquecimento = alocados();
+        long compilacao = tempoCompilacaoMs();
+        int passadas = 0;
+        boolean estavel = false;
+        while (!estavel && passadas < MAXIMO_PASSADAS_AQUECIMENTO) {
+            long bytesBloco = 0;
+            long compilacaoBloco = tempoCompilacaoMs();
+            for (int i = 0; i < PASSADAS_POR_BLOCO; i++) {
+                INICIAL.restaura();   // aloca as métricas novas, fora da conta do bloco
+                long antes = alocados();
+                roda(CICLOS_CENARIO, null, null, 0);
+                bytesBloco += alocados() - antes - custo;
+            }
+            passadas += PASSADAS_POR_BLOCO;
+            estavel = bytesBloco <= 0 && tempoCompilacaoMs() == compilacaoBloco;
+        }
+        System.out.println("Aquecimento: " + passadas + " passadas do cenário de " + CICLOS_CENARIO + " ciclos, " +
+                           (alocados() - antesAquecimento) + " B (carga de classes e compilação), " +
+                           (tempoCompilacaoMs() - compilacao) + "ms de compilação, fora do orçamento" +
+                           (estavel ? "" : "; o compilador não estabilizou"));
+
+        OrcamentoAlocacao controle = new OrcamentoAlocacao("controle", limite);
+        OrcamentoAlocacao fisica = new OrcamentoAlocacao("física", limite);
+        INICIAL.restaura();
+        compilacao = tempoCompilacaoMs();
+        roda(ciclos, controle, fisica, custo);
+        controle.imprime();
+        fisica.imprime();
+        boolean dentro = controle.dentroDoOrcamento() && fisica.dentroDoOrcamento();
+        if (!dentro && tempoCompilacaoMs() != compilacao) {
+            System.out.println("Houve compilação durante a medição (" + (tempoCompilacaoMs() - compilacao) +
+                               "ms); um ciclo acima do limite pode ser dela");
+        }
+        return dentro;
+    }
+
+    static final int CICLOS_CENARIO = 30;          // o cenário do modo virtual, com as falhas programadas
+    static final int PASSADAS_POR_BLOCO = 100;
+    static final int MAXIMO_PASSADAS_AQUECIMENTO = 10000;
+
+    // Roda os ciclos; com orçamentos, mede cada ciclo de controle e cada passo de física
+    static void roda(int ciclos, OrcamentoAlocacao controle, OrcamentoAlocacao fisica, long custo) {
+        for (int tick = 1; tick <= ciclos * 5; tick++) {
+            Relogio.avanca(1000000000L);
+            if (tick % 5 == 0) {
+                long antes = alocados();
+                SteamBoilerControl.cicloControle(tick / 5);
+                if (controle != null) controle.registra(tick / 5, alocados() - antes - custo);
+            }
+            long antes = alocados();
+            SteamBoilerControl.atualizaSistemaFisico();
+            SteamBoilerControl.acumulaTrajetoria();
+            if (fisica != null) fisica.registra(tick, alocados() - antes - custo);
+            RegistroEventos.descartaPendentes();
+        }
+    }
+
+    // Tempo total gasto pelos compiladores da JVM até agora (-1 se ela não mede)
+    static long tempoCompilacaoMs() {
+        java.lang.management.CompilationMXBean compilacao = ManagementFactory.getCompilationMXBean();
+        return compilacao != null && compilacao.isCompilationTimeMonitoringSupported()
+            ? compilacao.getTotalCompilationTime() : -1;
+    }
+
+    // Tirado quando a classe é inicializada, antes do primeiro ciclo do diagnóstico, então
+    // cada executa() recomeça do mesmo ponto mesmo depois de outra
+    static final EstadoInicial INICIAL = new EstadoInicial();
+
+    /** O estado da caldeira estática antes do cenário, para recomeçá-lo do mesmo ponto. */
+    static class EstadoInicial {
+        final long estado = SteamBoilerControl.estado.get();
+        final SteamBoilerControl.Mode modo = SteamBoilerControl.atualModo;
+        final int estabilizacao = SteamBoilerControl.ciclosEstabilizacao;
+        final int emergencia = SteamBoilerControl.ciclosModoEmergencia;
+
+        // Também recomeça o relógio virtual, a assinatura e as métricas (ligadas, como na
+        // execução em tempo real)
+        void restaura() {
+            SteamBoilerControl.estado.set(estado);
+            SteamBoilerControl.atualModo = modo;
+            SteamBoilerControl.ciclosEstabilizacao = estabilizacao;
+            SteamBoilerControl.ciclosModoEmergencia = emergencia;
+            SteamBoilerControl.carregaEstado();
+            SteamBoilerControl.assinaturaTrajetoria = 0;
+            SteamBoilerControl.metricas = new MetricasCaldeira();
+            Relogio.usaVirtual();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.lang.management.ManagementFactory;
+import javax.management.ObjectName;
+
+/**
+ * Publica as MetricasCaldeira por JMX. Uma thread de prioridade mínima (abaixo de todas as
+ * de tempo real, e de qualquer RealtimeThread no RTSJ) tira um instantâneo a cada
+ * PERIODO_MS e o deixa em um campo volatile; os atributos do MBean só leem esse
+ * instantâneo. Uma consulta JMX, portanto, nunca toca as métricas vivas nem disputa
+ * monitor com o controle ou a física, e quem aloca é só esta thread.
+ */
+public class PublicadorMetricas implements PublicadorMetricasMBean, Runnable {
+
+    static final long PERIODO_MS = 1000;
+    static final String NOME = "SteamBoilerControl:type=Metricas";
+
+    final MetricasCaldeira metricas;
+    private volatile MetricasCaldeira.Instantaneo ultimo;
+    private volatile boolean ativo = true;
+    private final Thread thread;
+    private ObjectName nome;
+
+    PublicadorMetricas(MetricasCaldeira metricas) {
+        this.metricas = metricas;
+        ultimo = metricas.instantaneo(Relogio.agoraNs());
+        thread = new Thread(this, "publicador de métricas");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /** Registra o MBean no servidor da plataforma e começa a tirar instantâneos. */
+    void inicia() {
+        try {
+            nome = new ObjectName(NOME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, nome);
+        } catch (Exception e) {
+            nome = null;
+            System.out.println("[métricas] sem JMX (" + e + "); só o resumo final");
+        }
+        thread.start();
+    }
+
+    public void run() {
+        while (ativo) {
+            try {
+                Thread.sleep(PERIODO_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            ultimo = metricas.instantaneo(Relogio.agoraNs());
+        }
+    }
+
+    /** Para a thread, tira o instantâneo final e remove o MBean. */
+    MetricasCaldeira.Instantaneo encerra() {
+        ativo = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (nome != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(nome);
+            } catch (Exception e) {
+                // já removido
+            }
+        }
+        return ultimo = metricas.instantaneo(Relogio.agoraNs());
+    }
+
+    public String getModo() {
+        return SteamBoilerControl.Mode.values()[ultimo.modo].name();
+    }
+
+    public long getDecisoes() {
+        return ultimo.decisoes;
+    }
+
+    public long getPassos() {
+        return ultimo.passos;
+    }
+
+    public long getIdadeInstantaneoMs() {
+        return (Relogio.agoraNs() - ultimo.instanteNs) / 1000000;
+    }
+
+    public String[] getTransicoes() {
+        MetricasCaldeira.Instantaneo m = ultimo;
+        SteamBoilerControl.Mode[] modos = SteamBoilerControl.Mode.values();
+        int n = 0;
+        for (long t : m.transicoes) if (t > 0) n++;
+        String[] transicoes = new String[n];
+        n = 0;
+        for (int i = 0; i < m.transicoes.length; i++) {
+            if (m.transicoes[i] > 0) {
+                transicoes[n++] = modos[i / MetricasCaldeira.MODOS] + "->" + modos[i % MetricasCaldeira.MODOS] +
+                                  "=" + m.transicoes[i];
+            }
+        }
+        return transicoes;
+    }
+
+    public long getEntradasParadaEmergencia() {
+        return ultimo.entradas(SteamBoilerControl.Mode.PARADA_EMERGENCIA.ordinal());
+    }
+
+    public long getEntradasSalvamento() {
+        return ultimo.entradas(SteamBoilerControl.Mode.SALVAMENTO.ordinal());
+    }
+
+    public long getEntradasDegradado() {
+        return ultimo.entradas(SteamBoilerControl.Mode.DEGRADADO.ordinal());
+    }
+
+    private long tempoModoMs(SteamBoilerControl.Mode modo) {
+        return ultimo.tempoModoNs[modo.ordinal()] / 1000000;
+    }
+
+    public long getTempoInicializacaoMs() {
+        return tempoModoMs(SteamBoilerControl.Mode.INICIALIZACAO);
+    }
+
+    public long getTempoNormalMs() {
+        return tempoModoMs(SteamBoilerControl.Mode.NORMAL);
+    }
+
+    public long getTempoDegradadoMs() {
+        return tempoModoMs(SteamBoilerControl.Mode.DEGRADADO);
+    }
+
+    public long getTempoSalvamentoMs() {
+        return tempoModoMs(SteamBoilerControl.Mode.SALVAMENTO);
+    }
+
+    public long getTempoParadaEmergenciaMs() {
+        return tempoModoMs(SteamBoilerControl.Mode.PARADA_EMERGENCIA);
+    }
+
+    public double getCicloTrabalhoBomba1() {
+        return ultimo.cicloTrabalho(0);
+    }
+
+    public double getCicloTrabalhoBomba2() {
+        return ultimo.cicloTrabalho(1);
+    }
+
+    public long getPartidasBomba1() {
+        return ultimo.partidasBomba[0];
+    }
+
+    public long getPartidasBomba2() {
+        return ultimo.partidasBomba[1];
+    }
+
+    public long getTempoFalhaBomba1Ms() {
+        return ultimo.tempoFalhaNs[0] / 1000000;
+    }
+
+    public long getTempoFalhaBomba2Ms() {
+        return ultimo.tempoFalhaNs[1] / 1000000;
+    }
+
+    public long getTempoFalhaSensorAguaMs() {
+        return ultimo.tempoFalhaNs[2] / 1000000;
+    }
+
+    public long getTempoFalhaSensorVaporMs() {
+        return ultimo.tempoFalhaNs[3] / 1000000;
+    }
+
+    public long getFalhasBomba1() {
+        return ultimo.falhas[0];
+    }
+
+    public long getFalhasBomba2() {
+        return ultimo.falhas[1];
+    }
+
+    public long getFalhasSensorAgua() {
+        return ultimo.falhas[2];
+    }
+
+    public long getFalhasSensorVapor() {
+        return ultimo.falhas[3];
+    }
+
+    public int getNivelMinimoJanela() {
+        long j = ultimo.janela();
+        return j < 0 ? -1 : MetricasCaldeira.minimo(j);
+    }
+
+    public int getNivelMaximoJanela() {
+        long j = ultimo.janela();
+        return j < 0 ? -1 : MetricasCaldeira.maximo(j);
+    }
+
+    public int getNivelMinimoJanelaAtual() {
+        long j = ultimo.janelaAtual;
+        return j < 0 ? -1 : MetricasCaldeira.minimo(j);
+    }
+
+    public int getNivelMaximoJanelaAtual() {
+        long j = ultimo.janelaAtual;
+        return j < 0 ? -1 : MetricasCaldeira.maximo(j);
+    }
+}
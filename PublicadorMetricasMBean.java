@@ -0,0 +1,43 @@
+/**
+ * Atributos JMX das métricas de operação (ver PublicadorMetricas). Todos vêm do último
+ * instantâneo, tirado a cada segundo; tempos em milissegundos, ciclos de trabalho de 0 a 1.
+ */
+public interface PublicadorMetricasMBean {
+
+    String getModo();
+    long getDecisoes();
+    long getPassos();
+    long getIdadeInstantaneoMs();
+
+    /** Transições ocorridas, como "DE->PARA=n". */
+    String[] getTransicoes();
+    long getEntradasParadaEmergencia();
+    long getEntradasSalvamento();
+    long getEntradasDegradado();
+
+    long getTempoInicializacaoMs();
+    long getTempoNormalMs();
+    long getTempoDegradadoMs();
+    long getTempoSalvamentoMs();
+    long getTempoParadaEmergenciaMs();
+
+    double getCicloTrabalhoBomba1();
+    double getCicloTrabalhoBomba2();
+    long getPartidasBomba1();
+    long getPartidasBomba2();
+
+    long getTempoFalhaBomba1Ms();
+    long getTempoFalhaBomba2Ms();
+    long getTempoFalhaSensorAguaMs();
+    long getTempoFalhaSensorVaporMs();
+    long getFalhasBomba1();
+    long getFalhasBomba2();
+    long getFalhasSensorAgua();
+    long getFalhasSensorVapor();
+
+    /** Nível mínimo e máximo na última janela completa (ou na primeira, enquanto ela não termina); -1 sem passos. */
+    int getNivelMinimoJanela();
+    int getNivelMaximoJanela();
+    int getNivelMinimoJanelaAtual();
+    int getNivelMaximoJanelaAtual();
+}
@@ -0,0 +1,357 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registro binário de eventos: um buffer circular de tamanho fixo, alocado uma única vez,
+ * onde as threads de controle e de física gravam registros (código, instante, modo e até
+ * três inteiros) sem alocar memória e sem fazer E/S. Uma thread de baixa prioridade drena
+ * o buffer e formata as mensagens no console, fora do caminho crítico.
+ *
+ * Se o buffer estiver cheio o evento é descartado (o produtor nunca bloqueia) e o
+ * contador de descartes é incrementado.
+ */
+public class RegistroEventos {
+
+    // Códigos de evento
+    static final int SISTEMA_INICIADO = 1;
+    static final int SIMULACAO_CONCLUIDA = 2;
+    static final int CICLO = 3;                    // a = ciclo
+    static final int FALHA_BOMBA = 4;              // a = bomba
+    static final int REPARO_BOMBA = 5;             // a = bomba
+    static final int FALHA_SENSOR_AGUA = 6;
+    static final int REPARO_SENSOR_AGUA = 7;
+    static final int MODO = 8;
+    static final int INICIALIZACAO_NIVEL_BAIXO = 9;   // a = nível
+    static final int INICIALIZACAO_NIVEL_ALTO = 10;   // a = nível
+    static final int INICIALIZACAO_NIVEL_NORMAL = 11; // a = nível
+    static final int NIVEL_CRITICO_DETECTADO = 12;
+    static final int SISTEMA_ESTAVEL = 13;
+    static final int SENSOR_AGUA_COM_FALHA = 14;
+    static final int BOMBA_COM_FALHA = 15;
+    static final int EMERGENCIA_NIVEL_CRITICO = 16;   // a = nível, b = 1 se mostra a mudança de modo
+    static final int BOMBAS_REPARADAS = 17;
+    static final int SISTEMA_REPARADO = 18;
+    static final int SENSOR_REPARADO = 19;
+    static final int EMERGENCIA_BAIXO = 20;
+    static final int EMERGENCIA_ALTO = 21;
+    static final int RECUPERACAO_EM_PROGRESSO = 22;   // a = ciclos em emergência
+    static final int NIVEL_SEGURO_ATINGIDO = 23;
+    static final int NIVEL_NAO_CRITICO = 24;
+    static final int AGUARDANDO_ESTABILIZACAO = 25;
+    static final int INTEGRIDADE = 26;             // a = seguro, b = normal, c = dispositivos (0/1)
+    static final int NIVEL_ABAIXO_NORMAL = 27;     // a = nível
+    static final int NIVEL_ACIMA_NORMAL = 28;      // a = nível
+    static final int NIVEL_MEDIO_BAIXO = 29;       // a = nível
+    static final int NIVEL_NORMAL = 30;            // a = nível
+    static final int DEGRADADO_BOMBA_LIGADA = 31;  // a = bomba, b = nível
+    static final int DEGRADADO_NIVEL_ALTO = 32;    // a = nível
+    static final int DEGRADADO_APENAS_BOMBA = 33;  // a = bomba
+    static final int DEGRADADO_ECONOMIA = 34;
+    static final int SALVAMENTO_VAPOR_BAIXO = 35;  // a = vapor
+    static final int SALVAMENTO_VAPOR_ALTO = 36;   // a = vapor
+    static final int SALVAMENTO_CONSERVATIVO = 37; // a = vapor
+    static final int FISICA = 38;                  // a = nível antigo<<16 | novo, b = entrada<<16 | saída, c = vapor antigo<<16 | novo
+    static final int ESTADO = 39;                  // a = nível, b = vapor, c = bits de BIT_*
+    static final int DECISAO_TABELA = 40;          // a = nível, b = bits BIT_LIGADA_*, c = próximo modo
+    static final int SALVAMENTO_ESTIMATIVA = 41;   // a = nível estimado, b = incerteza, c = bits BIT_LIGADA_*
+    static final int CRUZAMENTO_FAIXA = 42;        // a = faixa anterior, b = faixa nova (faixaCruzamento), c = nível visto
+
+    // Bits do evento ESTADO
+    static final int BIT_LIGADA_BOMBA1 = 1;
+    static final int BIT_LIGADA_BOMBA2 = 2;
+    static final int BIT_FUNCIONA_BOMBA1 = 4;
+    static final int BIT_FUNCIONA_BOMBA2 = 8;
+    static final int BIT_FUNCIONA_SENSOR_AGUA = 16;
+    static final int BIT_FUNCIONA_SENSOR_VAPOR = 32;
+
+    // Nomes dos modos como aparecem na linha "MODO: ...", na ordem de SteamBoilerControl.Mode
+    static final String[] NOMES_MODO = {
+        "Inicialização", "Normal", "Degradado", "Salvamento", "PARADA DE EMERGÊNCIA!"
+    };
+
+    static final int CAPACIDADE = 4096; // potência de 2
+    private static final int MASCARA = CAPACIDADE - 1;
+
+    // Registros em tabelas paralelas, preenchidas pelo produtor que reservou a posição
+    private static final int[] codigos = new int[CAPACIDADE];
+    private static final long[] tempos = new long[CAPACIDADE];
+    private static final byte[] modos = new byte[CAPACIDADE];
+    private static final int[] valoresA = new int[CAPACIDADE];
+    private static final int[] valoresB = new int[CAPACIDADE];
+    private static final int[] valoresC = new int[CAPACIDADE];
+    // publicados[i] == pos + 1 quando o registro da posição pos terminou de ser escrito
+    private static final AtomicLongArray publicados = new AtomicLongArray(CAPACIDADE);
+
+    private static final AtomicLong cabeca = new AtomicLong(); // próxima posição a reservar
+    private static volatile long cauda = 0;                    // próxima posição a drenar
+    private static final AtomicLong descartados = new AtomicLong();
+
+    // Desligado nas execuções longas em que só interessa o resultado final
+    static volatile boolean habilitado = true;
+
+    private static volatile boolean drenando = false;
+    private static Thread drenagem;
+
+    static void registra(int codigo, int modo) {
+        registra(codigo, modo, 0, 0, 0);
+    }
+
+    static void registra(int codigo, int modo, int a) {
+        registra(codigo, modo, a, 0, 0);
+    }
+
+    static void registra(int codigo, int modo, int a, int b) {
+        registra(codigo, modo, a, b, 0);
+    }
+
+    /** Grava um evento sem alocar e sem bloquear. Retorna false se o evento foi descartado. */
+    static boolean registra(int codigo, int modo, int a, int b, int c) {
+        if (!habilitado) return false;
+        long pos;
+        do {
+            pos = cabeca.get();
+            if (pos - cauda >= CAPACIDADE) {
+                descartados.incrementAndGet();
+                return false;
+            }
+        } while (!cabeca.compareAndSet(pos, pos + 1));
+
+        int i = (int) pos & MASCARA;
+        codigos[i] = codigo;
+        tempos[i] = Relogio.agoraNs();
+        modos[i] = (byte) modo;
+        valoresA[i] = a;
+        valoresB[i] = b;
+        valoresC[i] = c;
+        publicados.lazySet(i, pos + 1);
+        return true;
+    }
+
+    static long descartados() {
+        return descartados.get();
+    }
+
+    /** Inicia a thread de drenagem, com a menor prioridade disponível. */
+    static synchronized void iniciaDrenagem() {
+        if (drenagem != null) return;
+        drenando = true;
+        drenagem = new Thread(new Runnable() {
+            public void run() {
+                StringBuilder sb = new StringBuilder(256);
+                while (drenando) {
+                    if (drena(sb) == 0) {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "drenagem-eventos");
+        drenagem.setPriority(Thread.MIN_PRIORITY);
+        drenagem.setDaemon(true);
+        drenagem.start();
+    }
+
+    /** Para a drenagem, mostra o que restou no buffer e informa os descartes. */
+    static synchronized void encerra() {
+        if (drenagem != null) {
+            drenando = false;
+            try {
+                drenagem.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drenagem = null;
+        }
+        drena(new StringBuilder(256));
+        long perdidos = descartados.get();
+        if (perdidos > 0) {
+            System.out.println("Registro de eventos: " + perdidos + " eventos descartados (buffer cheio)");
+        }
+    }
+
+    /** Formata e mostra todos os eventos já publicados. Só pode ser chamado por um consumidor de cada vez. */
+    static int drena(StringBuilder sb) {
+        int drenados = 0;
+        long pos = cauda;
+        while (true) {
+            int i = (int) pos & MASCARA;
+            if (publicados.get(i) != pos + 1) break;
+            sb.setLength(0);
+            formata(sb, codigos[i], tempos[i], modos[i], valoresA[i], valoresB[i], valoresC[i]);
+            pos++;
+            cauda = pos;
+            System.out.println(sb);
+            drenados++;
+        }
+        return drenados;
+    }
+
+    /** Descarta sem formatar os eventos já publicados (usado pela bancada de medição). */
+    static int descartaPendentes() {
+        int descartadosAgora = 0;
+        long pos = cauda;
+        while (publicados.get((int) pos & MASCARA) == pos + 1) {
+            pos++;
+            descartadosAgora++;
+        }
+        cauda = pos;
+        return descartadosAgora;
+    }
+
+    static void formata(StringBuilder sb, int codigo, long tempoNs, int modo, int a, int b, int c) {
+        long ms = Relogio.emMs(tempoNs);
+        switch (codigo) {
+            case SISTEMA_INICIADO:
+                sb.append("SISTEMA DE CONTROLE DA CALDEIRA INICIADO");
+                break;
+            case SIMULACAO_CONCLUIDA:
+                sb.append("\nSIMULAÇÃO CONCLUÍDA");
+                break;
+            case CICLO:
+                sb.append("\n--- CICLO ").append(a).append(" - Tempo: ").append(ms).append("ms ---");
+                break;
+            case FALHA_BOMBA:
+                sb.append("FALHA BOMBA: bomba ").append(a).append(" não está funcionando!");
+                break;
+            case REPARO_BOMBA:
+                sb.append("REPARO: bomba ").append(a).append(" reparada!");
+                break;
+            case FALHA_SENSOR_AGUA:
+                sb.append("FALHA SENSOR: sensor de água com defeito!");
+                break;
+            case REPARO_SENSOR_AGUA:
+                sb.append("REPARO: sensor de água reparado!");
+                break;
+            case MODO:
+                sb.append("MODO: ").append(NOMES_MODO[modo]);
+                break;
+            case INICIALIZACAO_NIVEL_BAIXO:
+                sb.append("Inicialização: Nível baixo (").append(a).append("L) - Ligando bombas disponíveis");
+                break;
+            case INICIALIZACAO_NIVEL_ALTO:
+                sb.append("Inicialização: Nível alto (").append(a).append("L) - Desligando bombas");
+                break;
+            case INICIALIZACAO_NIVEL_NORMAL:
+                sb.append("Inicialização: Nível normal (").append(a).append("L) - Controle básico");
+                break;
+            case NIVEL_CRITICO_DETECTADO:
+                sb.append("Nível crítico detectado - Mudando para MODO EMERGÊNCIA");
+                break;
+            case SISTEMA_ESTAVEL:
+                sb.append("Sistema estável - Mudando para MODO NORMAL");
+                break;
+            case SENSOR_AGUA_COM_FALHA:
+                sb.append("Sensor de água com falha - Mudando para MODO SALVAMENTO");
+                break;
+            case BOMBA_COM_FALHA:
+                sb.append("Bomba com falha - Mudando para MODO DEGRADADO");
+                break;
+            case EMERGENCIA_NIVEL_CRITICO:
+                sb.append("EMERGÊNCIA: Nível crítico (").append(a).append("L)!");
+                if (b != 0) sb.append("\nMudando para MODO EMERGÊNCIA");
+                break;
+            case BOMBAS_REPARADAS:
+                sb.append("Bombas reparadas - Mudando para MODO NORMAL");
+                break;
+            case SISTEMA_REPARADO:
+                sb.append("Sistema reparado - Mudando para MODO NORMAL");
+                break;
+            case SENSOR_REPARADO:
+                sb.append("Sensor reparado - Mudando para MODO DEGRADADO");
+                break;
+            case EMERGENCIA_BAIXO:
+                sb.append("EMERGÊNCIA: Nível crítico baixo - FORÇANDO bombas para recuperação!");
+                break;
+            case EMERGENCIA_ALTO:
+                sb.append("EMERGÊNCIA: Nível crítico alto - Desligando bombas!");
+                break;
+            case RECUPERACAO_EM_PROGRESSO:
+                sb.append("Recuperação em progresso... Ciclos: ").append(a);
+                break;
+            case NIVEL_SEGURO_ATINGIDO:
+                sb.append("Nível seguro atingido - Retornando à inicialização");
+                break;
+            case NIVEL_NAO_CRITICO:
+                sb.append("Nível não mais crítico - Retornando à inicialização");
+                break;
+            case AGUARDANDO_ESTABILIZACAO:
+                sb.append("----EMERGÊNCIA | Aguardando estabilização do sistema----");
+                break;
+            case INTEGRIDADE:
+                sb.append("\nStatus do sistema atualmente:\nSeguro=").append(a != 0)
+                  .append(" Normal=").append(b != 0)
+                  .append(" Dispositivos=").append(c != 0).append('\n');
+                break;
+            case NIVEL_ABAIXO_NORMAL:
+                sb.append("Nível abaixo do normal (").append(a).append("L < ").append(SteamBoilerControl.N1)
+                  .append("L) - Ligando ambas as bombas");
+                break;
+            case NIVEL_ACIMA_NORMAL:
+                sb.append("Nível acima do normal (").append(a).append("L > ").append(SteamBoilerControl.N2)
+                  .append("L) - Desligando bombas");
+                break;
+            case NIVEL_MEDIO_BAIXO:
+                sb.append("Nível médio-baixo (").append(a).append("L) - Ligando bomba 1");
+                break;
+            case NIVEL_NORMAL:
+                sb.append("Nível normal (").append(a).append("L) - Bombas desligadas");
+                break;
+            case DEGRADADO_BOMBA_LIGADA:
+                sb.append("Modo degradado - Bomba ").append(a).append(" ligada (nível ").append(b).append("L)");
+                break;
+            case DEGRADADO_NIVEL_ALTO:
+                sb.append("Modo degradado - Bombas desligadas (nível alto ").append(a).append("L)");
+                break;
+            case DEGRADADO_APENAS_BOMBA:
+                sb.append("Modo degradado - Apenas bomba ").append(a).append(" disponível");
+                break;
+            case DEGRADADO_ECONOMIA:
+                sb.append("Modo degradado - Usando bomba 1 (economia)");
+                break;
+            case SALVAMENTO_VAPOR_BAIXO:
+                sb.append("Modo Salvamento: Estimando nível baixo pela baixa saída de vapor (").append(a).append("L/s)");
+                break;
+            case SALVAMENTO_VAPOR_ALTO:
+                sb.append("Modo Salvamento: Estimando nível alto pela alta saída de vapor (").append(a).append("L/s)");
+                break;
+            case SALVAMENTO_CONSERVATIVO:
+                sb.append("Modo Salvamento: Controle conservativo baseado no vapor (").append(a).append("L/s)");
+                break;
+            case FISICA:
+                sb.append("[FÍSICA ").append(ms % 100000).append("ms] ")
+                  .append("Água: ").append(a >>> 16).append("→").append(a & 0xFFFF).append("L ")
+                  .append("(+").append(b >>> 16).append(" -").append(b & 0xFFFF).append(") | ")
+                  .append("Vapor: ").append(c >>> 16).append("→").append(c & 0xFFFF).append("L/s");
+                break;
+            case ESTADO:
+                sb.append("Status: Água=").append(a).append("L, Vapor=").append(b).append("L/s\n")
+                  .append("Bombas: Bomba1=").append((c & BIT_LIGADA_BOMBA1) != 0 ? "LIGADA" : "DESLIGADA")
+                  .append(" Bomba2=").append((c & BIT_LIGADA_BOMBA2) != 0 ? "LIGADA" : "DESLIGADA").append('\n')
+                  .append("Funcionamento: |Bomba1=").append((c & BIT_FUNCIONA_BOMBA1) != 0).append("|")
+                  .append(" |Bomba2=").append((c & BIT_FUNCIONA_BOMBA2) != 0).append("|")
+                  .append(" |SensorÁgua=").append((c & BIT_FUNCIONA_SENSOR_AGUA) != 0).append("|")
+                  .append(" |SensorVapor=").append((c & BIT_FUNCIONA_SENSOR_VAPOR) != 0).append("|");
+                break;
+            case SALVAMENTO_ESTIMATIVA:
+                sb.append("Modo Salvamento: Nível estimado ").append(a).append("L (±").append(b).append("L) - Bomba1=")
+                  .append((c & BIT_LIGADA_BOMBA1) != 0 ? "LIGADA" : "DESLIGADA")
+                  .append(" Bomba2=").append((c & BIT_LIGADA_BOMBA2) != 0 ? "LIGADA" : "DESLIGADA");
+                break;
+            case DECISAO_TABELA:
+                sb.append("Tabela: nível ").append(a).append("L - Bomba1=")
+                  .append((b & BIT_LIGADA_BOMBA1) != 0 ? "LIGADA" : "DESLIGADA")
+                  .append(" Bomba2=").append((b & BIT_LIGADA_BOMBA2) != 0 ? "LIGADA" : "DESLIGADA")
+                  .append(", próximo modo: ").append(NOMES_MODO[c]);
+                break;
+            case CRUZAMENTO_FAIXA:
+                sb.append("Nível ").append(c).append("L passou de ").append(SteamBoilerControl.NOMES_FAIXA_CRUZAMENTO[a])
+                  .append(" para ").append(SteamBoilerControl.NOMES_FAIXA_CRUZAMENTO[b]).append(": decisão imediata");
+                break;
+            default:
+                sb.append("Evento desconhecido ").append(codigo);
+        }
+    }
+}
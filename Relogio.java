@@ -0,0 +1,38 @@
+/**
+ * Fonte de tempo dos eventos. No modo normal é o relógio monotônico da JVM; no modo
+ * virtual (simulação mais rápida que o tempo real) o tempo só anda quando a simulação
+ * chama avanca(), de modo que cada passo de física corresponde a exatamente 1s simulado.
+ */
+public class Relogio {
+
+    private static volatile boolean virtual = false;
+    private static volatile long tempoVirtualNs = 0;
+
+    // Referência para converter System.nanoTime() em horário de parede
+    private static final long baseMs = System.currentTimeMillis();
+    private static final long baseNs = System.nanoTime();
+
+    static long agoraNs() {
+        return virtual ? tempoVirtualNs : System.nanoTime();
+    }
+
+    /** Passa a usar o relógio virtual, começando do instante zero. */
+    static void usaVirtual() {
+        tempoVirtualNs = 0;
+        virtual = true;
+    }
+
+    /** Avança o relógio virtual. Só a thread que conduz a simulação deve chamar. */
+    static void avanca(long ns) {
+        tempoVirtualNs += ns;
+    }
+
+    static boolean virtual() {
+        return virtual;
+    }
+
+    /** Converte um instante de agoraNs() em milissegundos para exibição. */
+    static long emMs(long ns) {
+        return virtual ? ns / 1000000 : baseMs + (ns - baseNs) / 1000000;
+    }
+}
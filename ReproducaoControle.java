@@ -0,0 +1,99 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Reprodução de gravações do controle (GravacaoControle): cada decisão gravada é refeita
+ * a partir das mesmas entradas, sem threads nem períodos, e o resultado (bombas, modo e
+ * contadores) é comparado com o gravado. Para na primeira divergência e mostra as
+ * entradas e as duas saídas. Serve de teste de regressão rápido para mudanças em
+ * logicaControle e nos controleBombas_*.
+ */
+public class ReproducaoControle {
+
+    /**
+     * Reproduz o arquivo e devolve o índice da primeira divergência, ou -1 se não houver.
+     * Com forcaTabela, toda decisão é refeita pela tabela; senão, pela forma gravada.
+     */
+    static long reproduz(String caminho, boolean forcaTabela) throws IOException {
+        LeituraRegistros arquivo = new LeituraRegistros(caminho, GravacaoControle.MAGICO, GravacaoControle.VERSAO,
+                                                        GravacaoControle.TAMANHO_REGISTRO);
+        SteamBoilerControl.Mode[] modos = SteamBoilerControl.Mode.values();
+        boolean eventos = RegistroEventos.habilitado;
+        RegistroEventos.habilitado = false;
+        if (forcaTabela) TabelaDecisao.carrega();
+
+        long i = 0;
+        long divergencia = -1;
+        long t0 = System.nanoTime();
+        try {
+            for (MappedByteBuffer b : arquivo.segmentos) {
+                int fim = b.limit();
+                for (int p = 0; p < fim; p += GravacaoControle.TAMANHO_REGISTRO, i++) {
+                    int opcoes = b.get(p + GravacaoControle.POS_OPCOES);
+                    SteamBoilerControl.estado.set(b.getLong(p + GravacaoControle.POS_ESTADO));
+                    SteamBoilerControl.atualModo = modos[b.get(p + GravacaoControle.POS_MODO)];
+                    SteamBoilerControl.ciclosEstabilizacao = b.getInt(p + GravacaoControle.POS_ESTABILIZACAO);
+                    SteamBoilerControl.ciclosModoEmergencia = b.getInt(p + GravacaoControle.POS_EMERGENCIA);
+                    SteamBoilerControl.usaObservador = (opcoes & GravacaoControle.OPCAO_OBSERVADOR) != 0;
+
+                    boolean periodica = (opcoes & GravacaoControle.OPCAO_CRUZAMENTO) == 0;
+
+                    if (forcaTabela || (opcoes & GravacaoControle.OPCAO_TABELA) != 0) {
+                        SteamBoilerControl.logicaControleTabela(periodica);
+                    } else {
+                        SteamBoilerControl.logicaControle(periodica);
+                    }
+
+                    int bombas = (SteamBoilerControl.ligadaBomba1 ? 1 : 0) | (SteamBoilerControl.ligadaBomba2 ? 2 : 0);
+                    if (SteamBoilerControl.atualModo.ordinal() != b.get(p + GravacaoControle.POS_MODO_SAIDA)
+                            || bombas != b.get(p + GravacaoControle.POS_BOMBAS_SAIDA)
+                            || SteamBoilerControl.ciclosEstabilizacao != b.getInt(p + GravacaoControle.POS_ESTABILIZACAO_SAIDA)
+                            || SteamBoilerControl.ciclosModoEmergencia != b.getInt(p + GravacaoControle.POS_EMERGENCIA_SAIDA)) {
+                        divergencia = i;
+                        mostraDivergencia(b, p, i, bombas);
+                        return divergencia;
+                    }
+                }
+            }
+        } finally {
+            RegistroEventos.habilitado = eventos;
+            long decorrido = System.nanoTime() - t0;
+            System.out.printf("REPRODUÇÃO: %d de %d decisões reproduzidas em %.1fms (%.0f decisões/s), %s%n",
+                              divergencia < 0 ? i : divergencia + 1, arquivo.registros, decorrido / 1e6,
+                              (divergencia < 0 ? i : divergencia + 1) * 1e9 / decorrido,
+                              divergencia < 0 ? "nenhuma divergência" : "divergência na decisão " + divergencia);
+        }
+        return divergencia;
+    }
+
+    static void mostraDivergencia(MappedByteBuffer b, int p, long i, int bombas) {
+        long estado = b.getLong(p + GravacaoControle.POS_ESTADO);
+        SteamBoilerControl.Mode[] modos = SteamBoilerControl.Mode.values();
+        System.out.println("Divergência na decisão " + i + ":");
+        System.out.println("  Entrada: modo=" + modos[b.get(p + GravacaoControle.POS_MODO)] +
+                          " nível=" + EstadoCaldeira.nivel(estado) + "L vapor=" + EstadoCaldeira.vapor(estado) +
+                          "L/s estimativa=" + EstadoCaldeira.estimativa(estado) + "±" + EstadoCaldeira.incerteza(estado) +
+                          "L estabilização=" + b.getInt(p + GravacaoControle.POS_ESTABILIZACAO) +
+                          " emergência=" + b.getInt(p + GravacaoControle.POS_EMERGENCIA));
+        System.out.println("  Bomba1 funciona=" + EstadoCaldeira.tem(estado, EstadoCaldeira.FUNCIONA_BOMBA1) +
+                          " ligada=" + EstadoCaldeira.tem(estado, EstadoCaldeira.LIGADA_BOMBA1) +
+                          ", Bomba2 funciona=" + EstadoCaldeira.tem(estado, EstadoCaldeira.FUNCIONA_BOMBA2) +
+                          " ligada=" + EstadoCaldeira.tem(estado, EstadoCaldeira.LIGADA_BOMBA2) +
+                          ", SensorÁgua=" + EstadoCaldeira.tem(estado, EstadoCaldeira.FUNCIONA_SENSOR_AGUA) +
+                          ", SensorVapor=" + EstadoCaldeira.tem(estado, EstadoCaldeira.FUNCIONA_SENSOR_VAPOR) +
+                          ", opções=" + b.get(p + GravacaoControle.POS_OPCOES));
+        System.out.println("  Gravado: " + saida(modos[b.get(p + GravacaoControle.POS_MODO_SAIDA)],
+                                                b.get(p + GravacaoControle.POS_BOMBAS_SAIDA),
+                                                b.getInt(p + GravacaoControle.POS_ESTABILIZACAO_SAIDA),
+                                                b.getInt(p + GravacaoControle.POS_EMERGENCIA_SAIDA)));
+        System.out.println("  Obtido:  " + saida(SteamBoilerControl.atualModo, bombas,
+                                                SteamBoilerControl.ciclosEstabilizacao,
+                                                SteamBoilerControl.ciclosModoEmergencia));
+    }
+
+    static String saida(SteamBoilerControl.Mode modo, int bombas, int estabilizacao, int emergencia) {
+        return "modo=" + modo + " Bomba1=" + ((bombas & 1) != 0 ? "LIGADA" : "DESLIGADA") +
+               " Bomba2=" + ((bombas & 2) != 0 ? "LIGADA" : "DESLIGADA") +
+               " estabilização=" + estabilizacao + " emergência=" + emergencia;
+    }
+}
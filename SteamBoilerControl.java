@@ -1,11 +1,4 @@
-import javax.realtime.PriorityScheduler;
-import javax.realtime.PriorityParameters;
-import javax.realtime.PeriodicParameters;
-import javax.realtime.RelativeTime;
-import javax.realtime.RealtimeThread;
-import javax.realtime.Clock;
-import javax.realtime.AbsoluteTime;
-import javax.realtime.MemoryArea;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SteamBoilerControl {
     
@@ -18,207 +11,582 @@ public class SteamBoilerControl {
     static final int V = 70;    // Vapor saindo (litros/s)
     static final int P = 50;    // Capacidade de cada bomba (litros/s)
     
-    // Estado do sistema
-    static volatile int nivelAgua = 500;      // Nível atual de água
-    static volatile int saidaVapor = V;       // Vapor saindo
-    static volatile boolean funcionaBomba1 = true; // Se as bombas estão com defeito ou não
-    static volatile boolean funcionaBomba2 = true;
-    static volatile boolean funcionaSensorAgua = true;
-    static volatile boolean funcionaSensorVapor = true;
+    // Estado compartilhado entre as threads de controle e de física, empacotado em uma
+    // única palavra (ver EstadoCaldeira): a física publica nível e vapor de uma só vez e
+    // o controle lê tudo com uma única leitura no início de cada decisão
+    static final AtomicLong estado = new AtomicLong(EstadoCaldeira.comEstimativa(
+            EstadoCaldeira.empacota(500, V, EstadoCaldeira.TUDO_FUNCIONA), 500, 0));
+    
+    // Estado do sistema visto pela decisão em andamento: cópia de `estado` feita no início
+    // de logicaControle, usada só pela thread de controle. Assim uma decisão nunca mistura
+    // valores de dois passos de física. A cópia é a própria palavra, num campo comum, e cada
+    // valor é extraído dela quando a decisão o usa
+    static long visao = estado.get();
+    
+    static int nivelAgua() { return EstadoCaldeira.nivel(visao); }          // Nível atual de água
+    static int saidaVapor() { return EstadoCaldeira.vapor(visao); }         // Vapor saindo
+    static boolean funcionaBomba1() { return EstadoCaldeira.tem(visao, EstadoCaldeira.FUNCIONA_BOMBA1); } // Se as bombas estão com defeito ou não
+    static boolean funcionaBomba2() { return EstadoCaldeira.tem(visao, EstadoCaldeira.FUNCIONA_BOMBA2); }
+    static boolean funcionaSensorAgua() { return EstadoCaldeira.tem(visao, EstadoCaldeira.FUNCIONA_SENSOR_AGUA); }
+    static boolean funcionaSensorVapor() { return EstadoCaldeira.tem(visao, EstadoCaldeira.FUNCIONA_SENSOR_VAPOR); }
+    static int nivelEstimado() { return EstadoCaldeira.estimativa(visao); }  // Nível estimado pelo observador (usado no modo salvamento)
+    static int incertezaEstimativa() { return EstadoCaldeira.incerteza(visao); } // Incerteza da estimativa (litros)
     
     // Modos de operação
     enum Mode { INICIALIZACAO, NORMAL, DEGRADADO, SALVAMENTO, PARADA_EMERGENCIA }
     static volatile Mode atualModo = Mode.INICIALIZACAO;
     
-    // Controle das bombas
-    static volatile boolean ligadaBomba1 = false;// Se estão ligadas ou não
-    static volatile boolean ligadaBomba2 = false;
+    // Controle das bombas (também parte da cópia; os comandos voltam para `estado` no fim da decisão)
+    static boolean ligadaBomba1 = false;// Se estão ligadas ou não
+    static boolean ligadaBomba2 = false;
     
     // Contadores para controle de transições
     static int ciclosEstabilizacao = 0; // evita que troque de modo muito rápido
     static int ciclosModoEmergencia = 0;
     // so sai do modo de emergencia depois de alguns ciclos estabilizados
+    
+    // Decide pela tabela pré-calculada (TabelaDecisao) em vez do switch de logicaControle
+    static boolean decisaoPorTabela = false;
+    
+    // No modo salvamento, controla pelo nível estimado (ObservadorNivel) enquanto a incerteza permite
+    static boolean usaObservador = true;
+    
+    // Gravador de telemetria de cada passo de física (null quando desligado)
+    static TelemetriaMapeada telemetria = null;
+    
+    // Gravador das entradas e saídas de cada decisão do controle (null quando desligado)
+    static GravacaoControle gravacao = null;
+    
+    // Métricas de operação (modos, bombas, falhas, nível por janela), publicadas por JMX na
+    // execução em tempo real (ver PublicadorMetricas); null quando desligadas
+    static MetricasCaldeira metricas = null;
+    
+    // Decisão imediata quando a física leva o nível visto pelo controle para uma faixa mais
+    // perto de M1 ou M2, sem esperar o próximo ciclo de 5s; o ciclo periódico continua. Só
+    // com a opção "evento", porque muda a trajetória. O evento é criado pelo executor (ou é
+    // imediato no modo virtual) e fica null quando desligado.
+    static boolean decisaoPorEvento = false;
+    static EventoAssincrono cruzamento = null;
+    static volatile long instanteCruzamento;       // para medir a reação da decisão por evento
+    static final HistogramaLatencia reacaoCruzamento = new HistogramaLatencia();
+    
+    // Falhas e reparos simulados nos ciclos 10, 15, 20, 25 e 26; desligados quando as leituras
+    // vêm de sensores de fora (GatewaySensores), que informam a saúde dos componentes
+    static boolean falhasProgramadas = true;
+    
+    // O ciclo periódico e a decisão por cruzamento, em threads diferentes, não podem se sobrepor
+    static final Object decisao = new Object();
+    
+    static final Runnable decisaoPorCruzamento = new Runnable() {
+        public void run() {
+            synchronized (decisao) {
+                // Fora do ciclo periódico: os contadores de ciclos não avançam
+                if (decisaoPorTabela) logicaControleTabela(false); else logicaControle(false);
+            }
+            reacaoCruzamento.registra(Relogio.agoraNs() - instanteCruzamento);
+        }
+    };
 
     public static void main(String[] args) {
-        System.out.println("JamaicaVM Version: " + System.getProperty("java.vm.version"));
-        System.out.println("RTSJ Implementation: " + System.getProperty("javax.realtime.version"));
+        // Modo virtual: mesma simulação, sem esperar o tempo real passar
+        // (com "tabela", as decisões saem da tabela pré-calculada; com "evento", o controle também
+        // decide quando o nível cruza uma faixa)
+        if (args.length > 0 && args[0].equals("virtual")) {
+            decisaoPorTabela = args.length > 2 && args[2].equals("tabela");
+            decisaoPorEvento = temOpcao(args, "evento");
+            if (decisaoPorTabela) TabelaDecisao.carrega(); // gera a tabela antes de começar
+            executaVirtual(args.length > 1 ? Integer.parseInt(args[1]) : 30);
+            return;
+        }
         
-        // Thread de controle (executa a cada 5s)
-        int controlPriority = PriorityScheduler.instance().getMinPriority() + 20;
-        PriorityParameters controlPriorityParams = new PriorityParameters(controlPriority);
-        RelativeTime controlPeriod = new RelativeTime(5000, 0); // 5 segundos
-        PeriodicParameters controlPeriodicParams = new PeriodicParameters(null, controlPeriod, null, null, null, null);
+        // Modo virtual gravando a telemetria de cada passo em um arquivo mapeado, e leitura dela
+        if (args.length > 1 && args[0].equals("telemetria")) {
+            executaComTelemetria(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 30);
+            return;
+        }
+        // Modo virtual gravando cada decisão do controle, e reprodução da gravação pelo controle atual
+        // (com "tabela" no fim, a reprodução decide pela tabela pré-calculada)
+        if (args.length > 1 && args[0].equals("grava")) {
+            executaComGravacao(args[1], args.length > 2 ? Integer.parseInt(args[2]) : 30);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("reproduz")) {
+            try {
+                if (ReproducaoControle.reproduz(args[1], args.length > 2 && args[2].equals("tabela")) >= 0) System.exit(1);
+            } catch (java.io.IOException e) {
+                System.out.println("Erro ao ler a gravação: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length > 1 && args[0].equals("leitura")) {
+            try {
+                new LeitorTelemetria(args[1]).mostraEstatisticas();
+            } catch (java.io.IOException e) {
+                System.out.println("Erro ao ler a telemetria: " + e.getMessage());
+            }
+            return;
+        }
         
-        RealtimeThread controlThread = new RealtimeThread(controlPriorityParams, controlPeriodicParams) {
-            public void run() {
-                System.out.println("SISTEMA DE CONTROLE DA CALDEIRA INICIADO");
-                
-                for (int ciclo = 1; ciclo <= 30; ciclo++) {
-                    waitForNextPeriod();
-                    
-                    AbsoluteTime t = Clock.getRealtimeClock().getTime();
-                    System.out.println("\n--- CICLO " + ciclo + " - Tempo: " + t.getMilliseconds() + "ms ---");
-                    
-                    // Simular algumas falhas em momentos específicos
-                    if (ciclo == 10) {
-                        funcionaBomba1 = false; // força bomba 1 a parar
-                        System.out.println("FALHA BOMBA: bomba 1 não está funcionando!");
-                    }
-                    if (ciclo == 15) {
-                        funcionaSensorAgua = false; // força sensor de agua a parar
-                        System.out.println("FALHA SENSOR: sensor de água com defeito!");
-                    }
-                    if (ciclo == 20) {
-                        funcionaBomba1 = true; // bomba 1 volta a funcionar
-                        System.out.println("REPARO: bomba 1 reparada!");
-                    }
-                    if (ciclo == 25) {
-                        funcionaSensorAgua = true; // sensor de água volta ao normal
-                        System.out.println("REPARO: sensor de água reparado!");
-                    }
-                    if (ciclo == 26) {
-                        funcionaBomba1 = false; 
-                        System.out.println("FALHA BOMBA: bomba 1 não está funcionando!");
-                    }
-                    logicaControle();
-                    mostraEstadoFisico();
+        // Confere a tabela de decisão contra logicaControle para todas as entradas, e o caminho
+        // por tabela da frota contra o switch da frota
+        if (args.length > 0 && args[0].equals("tabela")) {
+            long divergencias = TabelaDecisao.verifica();
+            divergencias += TabelaDecisao.verificaFrota();
+            if (divergencias != 0) System.exit(1);
+            return;
+        }
+
+        // Campanha de injeção de falhas: muitos cenários sorteados, em paralelo
+        // (com "sem-observador", o modo salvamento estima o nível só pelo vapor; com "evento", o
+        // controle também decide quando o nível cruza uma faixa)
+        if (args.length > 0 && args[0].equals("campanha")) {
+            long cenarios = args.length > 1 ? Long.parseLong(args[1]) : 100000;
+            long semente = args.length > 2 ? Long.parseLong(args[2]) : 1;
+            int ciclos = args.length > 3 ? Integer.parseInt(args[3]) : 120;
+            boolean observador = !temOpcao(args, "sem-observador");
+            CampanhaFalhas.executa(cenarios, semente, ciclos, observador, temOpcao(args, "evento"));
+            return;
+        }
+
+        // Bancada de medição do caminho crítico (opcionalmente só as bancadas cujo nome contém o filtro)
+        if (args.length > 0 && args[0].equals("bancada")) {
+            BancadaControle.executa(args.length > 1 ? args[1] : null);
+            return;
+        }
+
+        // Modo frota: várias caldeiras por JVM (ver ExecucaoFrota); com "padrao" no fim, em threads comuns
+        if (args.length > 0 && args[0].equals("frota")) {
+            int caldeiras = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+            int fatias = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+            boolean padrao = args.length > 3 && args[3].equals("padrao");
+            ExecucaoFrota.executa(caldeiras, fatias, ExecutorPeriodico.escolhe(padrao, ExecutorPadrao.ESPERA_ATIVA_PADRAO_NS));
+            return;
+        }
+
+        // Carga do gateway de sensores pela loopback: quadros por segundo e alocação (ver CargaGateway)
+        if (args.length > 0 && args[0].equals("gateway")) {
+            long quadros = args.length > 1 ? Long.parseLong(args[1]) : 10000000;
+            int caldeiras = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            try {
+                CargaGateway.executa(quadros, caldeiras, temOpcao(args, "tcp"));
+            } catch (Exception e) {
+                System.out.println("Erro na carga do gateway: " + e);
+                System.exit(1);
+            }
+            return;
+        }
+
+        // Estresse do estado compartilhado: física e controle disputando o estado sem pausa
+        if (args.length > 0 && args[0].equals("estresse")) {
+            if (!EstresseEstado.executa(args.length > 1 ? Integer.parseInt(args[1]) : 5)) System.exit(1);
+            return;
+        }
+
+        // Diagnóstico de alocação: bytes alocados por ciclo no cenário virtual, falha acima do limite
+        // (com "evento", também nas decisões por cruzamento de faixa)
+        if (args.length > 0 && args[0].equals("alocacao")) {
+            decisaoPorEvento = temOpcao(args, "evento");
+            int ciclos = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+            long limite = args.length > 2 ? Long.parseLong(args[2]) : 0;
+            if (!OrcamentoAlocacao.executa(ciclos, limite)) System.exit(1);
+            return;
+        }
+
+        // Com "escopo", cada ciclo das threads periódicas roda em uma LTMemory reutilizada (MemoriaCiclo)
+        boolean usaEscopo = args.length > 0 && args[0].equals("escopo");
+        
+        // Com "padrao [espera-ativa-us]", as threads periódicas são threads comuns de uma JVM padrão
+        // (ExecutorPadrao); sem isso, RealtimeThreads do RTSJ, se a VM tiver (ExecutorRTSJ).
+        // Com "evento", o controle também decide na hora quando o nível cruza uma faixa
+        boolean padrao = args.length > 0 && args[0].equals("padrao");
+        ExecutorPeriodico executor = ExecutorPeriodico.escolhe(padrao, padrao && args.length > 1
+                                                               ? Long.parseLong(args[1]) * 1000
+                                                               : ExecutorPadrao.ESPERA_ATIVA_PADRAO_NS);
+        decisaoPorEvento = temOpcao(args, "evento");
+        
+        // Com "externo [porta]", as leituras vêm de sensores de fora pelo GatewaySensores (UDP ou
+        // TCP) em vez da thread de física, e as falhas programadas ficam desligadas
+        boolean externo = args.length > 0 && args[0].equals("externo");
+        GatewaySensores gateway = null;
+        if (externo) {
+            int porta = args.length > 1 && !args[1].equals("evento") ? Integer.parseInt(args[1])
+                                                                      : GatewaySensores.PORTA_PADRAO;
+            try {
+                gateway = new GatewaySensores(porta, null);
+            } catch (java.io.IOException e) {
+                System.out.println("Erro ao abrir a porta " + porta + " do gateway: " + e.getMessage());
+                return;
+            }
+            falhasProgramadas = false;
+            System.out.println("Recebendo leituras na porta " + porta + " (UDP e TCP)");
+        }
+        if (usaEscopo && !ExecutorPeriodico.rtsjDisponivel()) {
+            System.out.println("O modo escopo precisa de uma VM com RTSJ (LTMemory)");
+            return;
+        }
+        System.out.println(executor.descricao());
+        
+        // Thread de controle (executa a cada 5s, orçamento de CPU de 100ms por ciclo)
+        final MemoriaCiclo controlEscopo = !usaEscopo ? null : new MemoriaCiclo(new OrcamentoAlocacao("controle", 0)) {
+            void ciclo(int ciclo) {
+                cicloControle(ciclo);
+            }
+        };
+        TarefaPeriodica controle = new TarefaPeriodica("controle", 20, 5000000000L, 100000000L, 30) {
+            void inicio() {
+                evento(RegistroEventos.SISTEMA_INICIADO);
+            }
+            
+            void liberacao(int ciclo) {
+                synchronized (decisao) {
+                    if (controlEscopo != null) controlEscopo.executa(ciclo); else cicloControle(ciclo);
                 }
-                
-                System.out.println("\nSIMULAÇÃO CONCLUÍDA");
+            }
+            
+            void fim() {
+                evento(RegistroEventos.SIMULACAO_CONCLUIDA);
             }
         };
         
-        // Thread de simulação física (executa a cada 1s)
-        int simPriority = PriorityScheduler.instance().getMinPriority() + 10;
-        PriorityParameters simPriorityParams = new PriorityParameters(simPriority);
-        RelativeTime simPeriod = new RelativeTime(1000, 0); // 1 segundo
-        PeriodicParameters simPeriodicParams = new PeriodicParameters(null, simPeriod, null, null, null, null);
-        
-        RealtimeThread simulationThread = new RealtimeThread(simPriorityParams, simPeriodicParams) {
-            public void run() {
-                for (int i = 0; i < 150; i++) { //150 porque executa 5 vezes mais que o controle
-                    waitForNextPeriod();
+        // Thread de simulação física (executa a cada 1s, orçamento de 20ms)
+        final MemoriaCiclo simEscopo = !usaEscopo ? null : new MemoriaCiclo(new OrcamentoAlocacao("física", 0)) {
+            void ciclo(int ciclo) {
+                atualizaSistemaFisico();
+                acumulaTrajetoria();
+            }
+        };
+        // 150 porque executa 5 vezes mais que o controle
+        TarefaPeriodica fisica = new TarefaPeriodica("física", 10, 1000000000L, 20000000L, 150) {
+            void liberacao(int passo) {
+                if (simEscopo != null) {
+                    simEscopo.executa(passo);
+                } else {
                     atualizaSistemaFisico();
+                    acumulaTrajetoria();
                 }
             }
         };
         
-        // Inicia as threads
+        // Inicia as threads; as mensagens saem pela drenagem do registro de eventos
+        // Decisão por cruzamento de faixa com a prioridade do controle, acima da física
+        if (decisaoPorEvento) cruzamento = executor.criaEvento("cruzamento de faixa", 20, decisaoPorCruzamento);
+        RegistroEventos.iniciaDrenagem();
+        metricas = new MetricasCaldeira();
+        PublicadorMetricas publicador = new PublicadorMetricas(metricas);
+        publicador.inicia();
+        if (gateway != null) gateway.inicia();
         try {
-            controlThread.start();
-            simulationThread.start();
-            
-            // Aguarda conclusão das threads
-            controlThread.join();
-            simulationThread.join();
-            
+            if (externo) executor.executa(controle); else executor.executa(controle, fisica);
         } catch (InterruptedException e) {
             System.out.println("Thread interrompida: " + e.getMessage());
         }
+        if (gateway != null) {
+            try {
+                gateway.encerra();
+            } catch (java.io.IOException e) {
+                System.out.println("Erro ao fechar o gateway: " + e.getMessage());
+            }
+        }
+        if (cruzamento != null) {
+            cruzamento.encerra();
+            cruzamento = null;
+        }
+        RegistroEventos.encerra();
+        if (externo) {
+            gateway.imprime();
+        } else {
+            System.out.printf("Assinatura da trajetória: %016x%n", assinaturaTrajetoria);
+        }
+        controle.instrumentacao.imprime();
+        if (!externo) fisica.instrumentacao.imprime();
+        publicador.encerra().imprime();
+        if (decisaoPorEvento) {
+            System.out.println("[cruzamento] reação (disparo até o fim da decisão): " + reacaoCruzamento.resumo());
+        }
+        if (usaEscopo) {
+            controlEscopo.orcamento.imprime();
+            simEscopo.orcamento.imprime();
+        }
+    }
+    
+    // Se uma das opções depois do modo é `opcao`
+    static boolean temOpcao(String[] args, String opcao) {
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals(opcao)) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Executa a simulação com relógio virtual: em vez de liberações periódicas, um laço
+     * avança o tempo de 1s em 1s e roda a física a cada passo e o controle a cada 5 passos.
+     * No mesmo instante o controle roda antes da física, como acontece nas threads reais
+     * quando o escalonador de prioridades serializa as liberações simultâneas (a de
+     * controle tem prioridade maior), então a trajetória é a mesma do modo normal. A
+     * assinatura da trajetória, mostrada nos dois modos, permite conferir isso.
+     */
+    static void executaVirtual(int ciclos) {
+        System.out.println("MODO VIRTUAL: " + ciclos + " ciclos de controle (" + ciclos * 5 + "s simulados)");
+        Relogio.usaVirtual();
+        RegistroEventos.habilitado = ciclos <= 30; // execuções longas mostram só o resumo
+        RegistroEventos.iniciaDrenagem();
+        // Sem threads, a decisão por cruzamento roda logo após o passo de física, antes de qualquer
+        // outra coisa, como quando o tratador de prioridade maior preempta a física
+        cruzamento = decisaoPorEvento ? EventoAssincrono.imediato(decisaoPorCruzamento) : null;
+        metricas = new MetricasCaldeira();
+        
+        long t0 = System.nanoTime();
+        evento(RegistroEventos.SISTEMA_INICIADO);
+        for (int tick = 1; tick <= ciclos * 5; tick++) {
+            Relogio.avanca(1000000000L);
+            if (tick % 5 == 0) {
+                cicloControle(tick / 5);
+            }
+            atualizaSistemaFisico();
+            acumulaTrajetoria();
+        }
+        evento(RegistroEventos.SIMULACAO_CONCLUIDA);
+        long decorrido = System.nanoTime() - t0;
+        
+        RegistroEventos.encerra();
+        System.out.printf("Assinatura da trajetória: %016x%n", assinaturaTrajetoria);
+        long fim = estado.get();
+        System.out.println("Estado final: Água=" + EstadoCaldeira.nivel(fim) + "L, Vapor=" + EstadoCaldeira.vapor(fim) +
+                          "L/s, Modo=" + atualModo);
+        System.out.printf("%d passos de física em %.1fms (%.0f passos/s)%n",
+                          ciclos * 5L, decorrido / 1e6, ciclos * 5L * 1e9 / decorrido);
+        metricas.instantaneo(Relogio.agoraNs()).imprime();
+    }
+    
+    // Executa o modo virtual gravando cada passo de física em `arquivo` e depois lê o resultado
+    static void executaComTelemetria(String arquivo, int ciclos) {
+        try {
+            telemetria = new TelemetriaMapeada(arquivo);
+            executaVirtual(ciclos);
+            telemetria.fecha();
+            telemetria = null;
+            new LeitorTelemetria(arquivo).mostraEstatisticas();
+        } catch (java.io.IOException e) {
+            System.out.println("Erro na telemetria: " + e.getMessage());
+        }
+    }
+    
+    // Executa o modo virtual gravando cada decisão do controle em `arquivo`
+    static void executaComGravacao(String arquivo, int ciclos) {
+        try {
+            gravacao = new GravacaoControle(arquivo);
+            executaVirtual(ciclos);
+            System.out.println(gravacao.registros() + " decisões gravadas em " + arquivo);
+            gravacao.fecha();
+            gravacao = null;
+        } catch (java.io.IOException e) {
+            System.out.println("Erro na gravação: " + e.getMessage());
+        }
+    }
+    
+    // Um ciclo da thread de controle: falhas programadas, decisão e estado
+    static void cicloControle(int ciclo) {
+        evento(RegistroEventos.CICLO, ciclo);
+        if (falhasProgramadas) injetaFalhas(ciclo);
+        if (decisaoPorTabela) logicaControleTabela();
+        else logicaControle();
+        mostraEstadoFisico();
+    }
+    
+    // Simular algumas falhas em momentos específicos
+    static void injetaFalhas(int ciclo) {
+        if (ciclo == 10) {
+            alteraEstado(EstadoCaldeira.FUNCIONA_BOMBA1, false); // força bomba 1 a parar
+            evento(RegistroEventos.FALHA_BOMBA, 1);
+        }
+        if (ciclo == 15) {
+            alteraEstado(EstadoCaldeira.FUNCIONA_SENSOR_AGUA, false); // força sensor de agua a parar
+            evento(RegistroEventos.FALHA_SENSOR_AGUA);
+        }
+        if (ciclo == 20) {
+            alteraEstado(EstadoCaldeira.FUNCIONA_BOMBA1, true); // bomba 1 volta a funcionar
+            evento(RegistroEventos.REPARO_BOMBA, 1);
+        }
+        if (ciclo == 25) {
+            alteraEstado(EstadoCaldeira.FUNCIONA_SENSOR_AGUA, true); // sensor de água volta ao normal
+            evento(RegistroEventos.REPARO_SENSOR_AGUA);
+        }
+        if (ciclo == 26) {
+            alteraEstado(EstadoCaldeira.FUNCIONA_BOMBA1, false);
+            evento(RegistroEventos.FALHA_BOMBA, 1);
+        }
+    }
+    
+    // Resumo de toda a trajetória (nível, vapor, modo e bombas após cada passo de física),
+    // para comparar execuções em tempo real e virtuais. Só a thread de física atualiza.
+    static long assinaturaTrajetoria = 0;
+    
+    static void acumulaTrajetoria() {
+        long s = estado.get();
+        int resumo = EstadoCaldeira.nivel(s) | EstadoCaldeira.vapor(s) << 11 | atualModo.ordinal() << 19
+                   | (EstadoCaldeira.tem(s, EstadoCaldeira.LIGADA_BOMBA1) ? 1 << 22 : 0)
+                   | (EstadoCaldeira.tem(s, EstadoCaldeira.LIGADA_BOMBA2) ? 1 << 23 : 0);
+        assinaturaTrajetoria = (assinaturaTrajetoria ^ resumo) * 0x100000001B3L;
+    }
+    
+    // Copia o estado compartilhado para a visão da decisão, com uma única leitura
+    static long carregaEstado() {
+        long s = estado.get();
+        visao = s;
+        ligadaBomba1 = EstadoCaldeira.tem(s, EstadoCaldeira.LIGADA_BOMBA1);
+        ligadaBomba2 = EstadoCaldeira.tem(s, EstadoCaldeira.LIGADA_BOMBA2);
+        return s;
+    }
+    
+    // Publica os comandos das bombas decididos, sem perder um passo de física concorrente
+    static void publicaBombas() {
+        long anterior, atualizado;
+        do {
+            anterior = estado.get();
+            atualizado = EstadoCaldeira.com(EstadoCaldeira.com(anterior, EstadoCaldeira.LIGADA_BOMBA1, ligadaBomba1),
+                                            EstadoCaldeira.LIGADA_BOMBA2, ligadaBomba2);
+        } while (anterior != atualizado && !estado.compareAndSet(anterior, atualizado));
+    }
+    
+    // Liga ou desliga um bit do estado compartilhado (falhas e reparos de componentes)
+    static void alteraEstado(long bit, boolean valor) {
+        long anterior;
+        do {
+            anterior = estado.get();
+        } while (!estado.compareAndSet(anterior, EstadoCaldeira.com(anterior, bit, valor)));
+    }
+    
+    // Eventos vão para o registro binário (sem alocação nem E/S); a drenagem formata depois
+    static void evento(int codigo) {
+        RegistroEventos.registra(codigo, atualModo.ordinal());
+    }
+    
+    static void evento(int codigo, int a) {
+        RegistroEventos.registra(codigo, atualModo.ordinal(), a);
+    }
+    
+    static void evento(int codigo, int a, int b) {
+        RegistroEventos.registra(codigo, atualModo.ordinal(), a, b);
+    }
+    
+    static void evento(int codigo, int a, int b, int c) {
+        RegistroEventos.registra(codigo, atualModo.ordinal(), a, b, c);
     }
     
     static void logicaControle() {
-        boolean estaNivelEmergencia = (nivelAgua <= M1 || nivelAgua >= M2);
+        logicaControle(true);
+    }
+    
+    /**
+     * Decide o modo e as bombas. Os contadores de estabilização e de emergência contam ciclos
+     * de 5s, então só avançam quando `periodica` (a decisão do ciclo de controle); a decisão
+     * por cruzamento de faixa decide com eles como estão, e ainda pode zerá-los.
+     */
+    static void logicaControle(boolean periodica) {
+        long s = carregaEstado(); // um instantâneo consistente para toda a decisão
+        int modoEntrada = atualModo.ordinal(), estabilizacaoEntrada = ciclosEstabilizacao, emergenciaEntrada = ciclosModoEmergencia;
+        boolean estaNivelEmergencia = (nivelAgua() <= M1 || nivelAgua() >= M2);
         // se o nivel estiver muito baixo ou muito alto, muda para emergencia
         
         switch (atualModo) {
             case INICIALIZACAO: // estabiliza o sistema antes de entrar na operacao normal
-                System.out.println("MODO: Inicialização");
+                evento(RegistroEventos.MODO);
                 
-                if (nivelAgua < N1) {
+                if (nivelAgua() < N1) {
                     // se o nivel estiver abaixo do normal, liga bombas com base nelas funcionarem
-                    ligadaBomba1 = funcionaBomba1;
-                    ligadaBomba2 = funcionaBomba2;
-                    System.out.println("Inicialização: Nível baixo (" + nivelAgua + "L) - Ligando bombas disponíveis");
-                } else if (nivelAgua > N2) {
+                    ligadaBomba1 = funcionaBomba1();
+                    ligadaBomba2 = funcionaBomba2();
+                    evento(RegistroEventos.INICIALIZACAO_NIVEL_BAIXO, nivelAgua());
+                } else if (nivelAgua() > N2) {
                     ligadaBomba1 = false;
                     ligadaBomba2 = false;
                     // nivel muito alto de agua, desliga tudo
-                    System.out.println("Inicialização: Nível alto (" + nivelAgua + "L) - Desligando bombas");
+                    evento(RegistroEventos.INICIALIZACAO_NIVEL_ALTO, nivelAgua());
                 } else {
-                    ligadaBomba1 = funcionaBomba1 && (nivelAgua < (N1 + N2) / 2);
+                    ligadaBomba1 = funcionaBomba1() && (nivelAgua() < (N1 + N2) / 2);
                     ligadaBomba2 = false;
                     // se não não ta baixo nem alto, tá normal. Só mantém uma bomba ligada
-                    System.out.println("Inicialização: Nível normal (" + nivelAgua + "L) - Controle básico");
+                    evento(RegistroEventos.INICIALIZACAO_NIVEL_NORMAL, nivelAgua());
                 }
                 
                 // Só muda de modo após alguns ciclos tentando corrigir
-                ciclosEstabilizacao++;
+                if (periodica) ciclosEstabilizacao++;
                 if (ciclosEstabilizacao >= 3) {
                     if (estaNivelEmergencia) { // Niveis criticos, muda para modo emergencia
                         atualModo = Mode.PARADA_EMERGENCIA;
                         ciclosModoEmergencia = 0;
-                        System.out.println("Nível crítico detectado - Mudando para MODO EMERGÊNCIA");
+                        evento(RegistroEventos.NIVEL_CRITICO_DETECTADO);
                     } else if (checaIntegridadeSistema()) {
                         atualModo = Mode.NORMAL;
                         ciclosEstabilizacao = 0;
-                        System.out.println("Sistema estável - Mudando para MODO NORMAL");
+                        evento(RegistroEventos.SISTEMA_ESTAVEL);
                     } else {
                         // Decide próximo modo baseado nos problemas
-                        if (!funcionaSensorAgua) { // sensor de agua estragou
+                        if (!funcionaSensorAgua()) { // sensor de agua estragou
                             atualModo = Mode.SALVAMENTO;
                             ciclosEstabilizacao = 0;
-                            System.out.println("Sensor de água com falha - Mudando para MODO SALVAMENTO");
-                        } else if (!funcionaBomba1 || !funcionaBomba2) { // uma das bombas estragou
+                            evento(RegistroEventos.SENSOR_AGUA_COM_FALHA);
+                        } else if (!funcionaBomba1() || !funcionaBomba2()) { // uma das bombas estragou
                             atualModo = Mode.DEGRADADO;
                             ciclosEstabilizacao = 0;
-                            System.out.println("Bomba com falha - Mudando para MODO DEGRADADO");
+                            evento(RegistroEventos.BOMBA_COM_FALHA);
                         }
                     }
                 }
                 break;
                 
             case NORMAL:
-                System.out.println("MODO: Normal");
+                evento(RegistroEventos.MODO);
                 
                 // Verificar se deve ir para emergência
                 if (estaNivelEmergencia) {
                     atualModo = Mode.PARADA_EMERGENCIA;
                     ciclosModoEmergencia = 0;
-                    System.out.println("EMERGÊNCIA: Nível crítico (" + nivelAgua + "L)!\nMudando para MODO EMERGÊNCIA");
-                } else if (!funcionaSensorAgua) {
+                    evento(RegistroEventos.EMERGENCIA_NIVEL_CRITICO, nivelAgua(), 1);
+                } else if (!funcionaSensorAgua()) {
                     atualModo = Mode.SALVAMENTO;
-                    System.out.println("Sensor de água com falha - Mudando para MODO SALVAMENTO");
-                } else if (!funcionaBomba1 || !funcionaBomba2) {
+                    evento(RegistroEventos.SENSOR_AGUA_COM_FALHA);
+                } else if (!funcionaBomba1() || !funcionaBomba2()) {
                     atualModo = Mode.DEGRADADO;
-                    System.out.println("Bomba com falha - Mudando para MODO DEGRADADO");
+                    evento(RegistroEventos.BOMBA_COM_FALHA);
                 } else {
                     controleBombas_TudoBem();
                 }
                 break;
                 
             case DEGRADADO:
-                System.out.println("MODO: Degradado");
+                evento(RegistroEventos.MODO);
                 
                 if (estaNivelEmergencia) {
                     atualModo = Mode.PARADA_EMERGENCIA;
                     ciclosModoEmergencia = 0;
-                    System.out.println("EMERGÊNCIA: Nível crítico (" + nivelAgua + "L)!\nMudando para MODO EMERGÊNCIA");
-                } else if (!funcionaSensorAgua) {
+                    evento(RegistroEventos.EMERGENCIA_NIVEL_CRITICO, nivelAgua(), 1);
+                } else if (!funcionaSensorAgua()) {
                     atualModo = Mode.SALVAMENTO;
-                    System.out.println("Sensor de água com falha - Mudando para MODO SALVAMENTO");
-                } else if (funcionaBomba1 && funcionaBomba2) {
+                    evento(RegistroEventos.SENSOR_AGUA_COM_FALHA);
+                } else if (funcionaBomba1() && funcionaBomba2()) {
                     atualModo = Mode.NORMAL;
-                    System.out.println("Bombas reparadas - Mudando para MODO NORMAL");
+                    evento(RegistroEventos.BOMBAS_REPARADAS);
                 } else {
                     controleBombas_BombaComFalha();
                 }
                 break;
                 
             case SALVAMENTO:
-                System.out.println("MODO: Salvamento");
+                evento(RegistroEventos.MODO);
                 
                 if (estaNivelEmergencia) {
                     atualModo = Mode.PARADA_EMERGENCIA;
                     ciclosModoEmergencia = 0;
-                    System.out.println("EMERGÊNCIA: Nível crítico (" + nivelAgua + "L)!");
-                } else if (funcionaSensorAgua) {
-                    if (funcionaBomba1 && funcionaBomba2) {
+                    evento(RegistroEventos.EMERGENCIA_NIVEL_CRITICO, nivelAgua(), 0);
+                } else if (funcionaSensorAgua()) {
+                    if (funcionaBomba1() && funcionaBomba2()) {
                         atualModo = Mode.NORMAL;
-                        System.out.println("Sistema reparado - Mudando para MODO NORMAL");
+                        evento(RegistroEventos.SISTEMA_REPARADO);
                     } else {
                         atualModo = Mode.DEGRADADO;
-                        System.out.println("Sensor reparado - Mudando para MODO DEGRADADO");
+                        evento(RegistroEventos.SENSOR_REPARADO);
                     }
                 } else {
                     controleBombas_SemSensor();
@@ -226,21 +594,21 @@ public class SteamBoilerControl {
                 break;
                 
             case PARADA_EMERGENCIA:
-                System.out.println("MODO: PARADA DE EMERGÊNCIA!");
+                evento(RegistroEventos.MODO);
                 
-                if (nivelAgua <= M1) {
+                if (nivelAgua() <= M1) {
                     // Nível muito baixo, tenta recuperar ligando tudo que funciona
-                    if (funcionaBomba1) ligadaBomba1 = true;
-                    if (funcionaBomba2) ligadaBomba2 = true;
-                    System.out.println("EMERGÊNCIA: Nível crítico baixo - FORÇANDO bombas para recuperação!");
+                    if (funcionaBomba1()) ligadaBomba1 = true;
+                    if (funcionaBomba2()) ligadaBomba2 = true;
+                    evento(RegistroEventos.EMERGENCIA_BAIXO);
                     
                     // Verificar se está melhorando
-                    if (nivelAgua > M1 + 20) { // Mínimo necessário + margem
-                        ciclosModoEmergencia++;
-                        System.out.println("Recuperação em progresso... Ciclos: " + ciclosModoEmergencia);
+                    if (nivelAgua() > M1 + 20) { // Mínimo necessário + margem
+                        if (periodica) ciclosModoEmergencia++;
+                        evento(RegistroEventos.RECUPERACAO_EM_PROGRESSO, ciclosModoEmergencia);
                         
                         if (ciclosModoEmergencia >= 2) {
-                            System.out.println("Nível seguro atingido - Retornando à inicialização");
+                            evento(RegistroEventos.NIVEL_SEGURO_ATINGIDO);
                             atualModo = Mode.INICIALIZACAO;
                             ciclosModoEmergencia = 0;
                             ciclosEstabilizacao = 0;
@@ -249,19 +617,19 @@ public class SteamBoilerControl {
                         ciclosModoEmergencia = 0;
                     }
                     
-                } else if (nivelAgua >= M2) {
+                } else if (nivelAgua() >= M2) {
                     // Nível muito alto - desligar tudo
                     ligadaBomba1 = false;
                     ligadaBomba2 = false;
-                    System.out.println("EMERGÊNCIA: Nível crítico alto - Desligando bombas!");
+                    evento(RegistroEventos.EMERGENCIA_ALTO);
                     
                     // Verificar se está melhorando
-                    if (nivelAgua < M2 - 20) { 
-                        ciclosModoEmergencia++;
-                        System.out.println("Recuperação em progresso... Ciclos: " + ciclosModoEmergencia);
+                    if (nivelAgua() < M2 - 20) { 
+                        if (periodica) ciclosModoEmergencia++;
+                        evento(RegistroEventos.RECUPERACAO_EM_PROGRESSO, ciclosModoEmergencia);
                         
                         if (ciclosModoEmergencia >= 2) {
-                            System.out.println("Nível seguro atingido - Retornando à inicialização");
+                            evento(RegistroEventos.NIVEL_SEGURO_ATINGIDO);
                             atualModo = Mode.INICIALIZACAO;
                             ciclosModoEmergencia = 0;
                             ciclosEstabilizacao = 0;
@@ -271,151 +639,311 @@ public class SteamBoilerControl {
                     }
                 } else {
                     // Nível não está mais em emergência
-                    System.out.println("Nível não mais crítico - Retornando à inicialização");
+                    evento(RegistroEventos.NIVEL_NAO_CRITICO);
                     atualModo = Mode.INICIALIZACAO;
                     ciclosModoEmergencia = 0;
                     ciclosEstabilizacao = 0;
                 }
                 
-                System.out.println("----EMERGÊNCIA | Aguardando estabilização do sistema----");
+                evento(RegistroEventos.AGUARDANDO_ESTABILIZACAO);
                 break;
         }
+        publicaBombas();
+        if (gravacao != null) gravacao.registra(s, modoEntrada, estabilizacaoEntrada, emergenciaEntrada, periodica);
+        if (metricas != null) metricas.registraDecisao(Relogio.agoraNs(), modoEntrada, atualModo.ordinal(),
+                                                       ligadaBomba1, ligadaBomba2);
+    }
+    
+    // Mesma decisão de logicaControle, tirada da tabela gerada a partir dela: custo constante,
+    // sem os eventos de cada ramo (só o modo e o resultado da decisão)
+    static void logicaControleTabela() {
+        logicaControleTabela(true);
+    }
+    
+    static void logicaControleTabela(boolean periodica) {
+        long s = carregaEstado();
+        int modoEntrada = atualModo.ordinal(), estabilizacaoEntrada = ciclosEstabilizacao, emergenciaEntrada = ciclosModoEmergencia;
+        evento(RegistroEventos.MODO);
+        int entrada = TabelaDecisao.decide(modoEntrada, nivelAgua(), saidaVapor(), nivelEstimado(),
+                                           usaObservador ? incertezaEstimativa() : ObservadorNivel.INCERTEZA_MAXIMA,
+                                           EstadoCaldeira.componentes(s), ciclosEstabilizacao, ciclosModoEmergencia,
+                                           periodica ? TabelaDecisao.CICLO_PERIODICO : TabelaDecisao.CICLO_CRUZAMENTO);
+        ligadaBomba1 = (entrada & TabelaDecisao.LIGADA_BOMBA1) != 0;
+        ligadaBomba2 = (entrada & TabelaDecisao.LIGADA_BOMBA2) != 0;
+        ciclosEstabilizacao = TabelaDecisao.estabilizacao(entrada, ciclosEstabilizacao);
+        ciclosModoEmergencia = TabelaDecisao.emergencia(entrada, ciclosModoEmergencia);
+        evento(RegistroEventos.DECISAO_TABELA, nivelAgua(),
+               (ligadaBomba1 ? RegistroEventos.BIT_LIGADA_BOMBA1 : 0) | (ligadaBomba2 ? RegistroEventos.BIT_LIGADA_BOMBA2 : 0),
+               TabelaDecisao.modo(entrada));
+        atualModo = TabelaDecisao.MODOS[TabelaDecisao.modo(entrada)];
+        publicaBombas();
+        if (gravacao != null) gravacao.registra(s, modoEntrada, estabilizacaoEntrada, emergenciaEntrada, periodica);
+        if (metricas != null) metricas.registraDecisao(Relogio.agoraNs(), modoEntrada, atualModo.ordinal(),
+                                                       ligadaBomba1, ligadaBomba2);
     }
     
     static boolean checaIntegridadeSistema() {
         // Verifica se o sistema está em condições seguras
-        boolean nivelAguaSeguro = (nivelAgua > M1 + 50 && nivelAgua < M2 - 50); // nível seguro é entre duas margens
-        boolean nivelAguaNormal = (nivelAgua >= N1 && nivelAgua <= N2); // nível normal é entre duas margens
-        boolean tudoFunciona = (funcionaSensorAgua && funcionaSensorVapor && 
-                            (funcionaBomba1 || funcionaBomba2)); // Pelo menos uma bomba
+        boolean nivelAguaSeguro = (nivelAgua() > M1 + 50 && nivelAgua() < M2 - 50); // nível seguro é entre duas margens
+        boolean nivelAguaNormal = (nivelAgua() >= N1 && nivelAgua() <= N2); // nível normal é entre duas margens
+        boolean tudoFunciona = (funcionaSensorAgua() && funcionaSensorVapor() && 
+                            (funcionaBomba1() || funcionaBomba2())); // Pelo menos uma bomba
         
-        System.out.println("\nStatus do sistema atualmente:\nSeguro=" + nivelAguaSeguro + 
-                          " Normal=" + nivelAguaNormal + 
-                          " Dispositivos=" + tudoFunciona + "\n");
+        evento(RegistroEventos.INTEGRIDADE, nivelAguaSeguro ? 1 : 0, nivelAguaNormal ? 1 : 0, tudoFunciona ? 1 : 0);
         
         return nivelAguaSeguro && tudoFunciona;
     }
     
     static void controleBombas_TudoBem() {
         // Controle baseado nos níveis normais N1 e N2
-        if (nivelAgua < N1) {
+        if (nivelAgua() < N1) {
             ligadaBomba1 = true;
             ligadaBomba2 = true;
-            System.out.println("Nível abaixo do normal (" + nivelAgua + "L < " + N1 + "L) - Ligando ambas as bombas");
-        } else if (nivelAgua > N2) {
+            evento(RegistroEventos.NIVEL_ABAIXO_NORMAL, nivelAgua());
+        } else if (nivelAgua() > N2) {
             ligadaBomba1 = false;
             ligadaBomba2 = false;
-            System.out.println("Nível acima do normal (" + nivelAgua + "L > " + N2 + "L) - Desligando bombas");
-        } else if (nivelAgua < (N1 + N2) / 2) {
+            evento(RegistroEventos.NIVEL_ACIMA_NORMAL, nivelAgua());
+        } else if (nivelAgua() < (N1 + N2) / 2) {
             ligadaBomba1 = true;
             ligadaBomba2 = false;
-            System.out.println("Nível médio-baixo (" + nivelAgua + "L) - Ligando bomba 1");
+            evento(RegistroEventos.NIVEL_MEDIO_BAIXO, nivelAgua());
         } else {
             ligadaBomba1 = false;
             ligadaBomba2 = false;
-            System.out.println("Nível normal (" + nivelAgua + "L) - Bombas desligadas");
+            evento(RegistroEventos.NIVEL_NORMAL, nivelAgua());
         }
     }
     
     static void controleBombas_BombaComFalha() {
         // Modo degradado: usar apenas bombas funcionais
-        if (nivelAgua < N1) {
-            if (funcionaBomba1) {
+        if (nivelAgua() < N1) {
+            if (funcionaBomba1()) {
                 ligadaBomba1 = true;
-                System.out.println("Modo degradado - Bomba 1 ligada (nível " + nivelAgua + "L)");
+                evento(RegistroEventos.DEGRADADO_BOMBA_LIGADA, 1, nivelAgua());
             } else {
                 ligadaBomba1 = false;
             }
-            if (funcionaBomba2) {
+            if (funcionaBomba2()) {
                 ligadaBomba2 = true;
-                System.out.println("Modo degradado - Bomba 2 ligada (nível " + nivelAgua + "L)");
+                evento(RegistroEventos.DEGRADADO_BOMBA_LIGADA, 2, nivelAgua());
             } else {
                 ligadaBomba2 = false;
             }
-        } else if (nivelAgua > N2) {
+        } else if (nivelAgua() > N2) {
             ligadaBomba1 = false;
             ligadaBomba2 = false;
-            System.out.println("Modo degradado - Bombas desligadas (nível alto " + nivelAgua + "L)");
+            evento(RegistroEventos.DEGRADADO_NIVEL_ALTO, nivelAgua());
         } else {
             // Nível médio - usar uma bomba se disponível
-            if (funcionaBomba1 && !funcionaBomba2) {
+            if (funcionaBomba1() && !funcionaBomba2()) {
                 ligadaBomba1 = true;
                 ligadaBomba2 = false;
-                System.out.println("Modo degradado - Apenas bomba 1 disponível");
-            } else if (!funcionaBomba1 && funcionaBomba2) {
+                evento(RegistroEventos.DEGRADADO_APENAS_BOMBA, 1);
+            } else if (!funcionaBomba1() && funcionaBomba2()) {
                 ligadaBomba1 = false;
                 ligadaBomba2 = true;
-                System.out.println("Modo degradado - Apenas bomba 2 disponível");
-            } else if (funcionaBomba1 && funcionaBomba2) {
+                evento(RegistroEventos.DEGRADADO_APENAS_BOMBA, 2);
+            } else if (funcionaBomba1() && funcionaBomba2()) {
                 ligadaBomba1 = true;
                 ligadaBomba2 = false;
-                System.out.println("Modo degradado - Usando bomba 1 (economia)");
+                evento(RegistroEventos.DEGRADADO_ECONOMIA);
             }
         }
     }
     
     static void controleBombas_SemSensor() {
+        if (usaObservador && ObservadorNivel.confiavel(incertezaEstimativa())) {
+            controleBombas_Estimativa();
+            return;
+        }
         // Controle baseado em estimativa
-        if (saidaVapor < 50) { // Pouco vapor pode indicar pouca água
-            if (funcionaBomba1) ligadaBomba1 = true;
-            if (funcionaBomba2) ligadaBomba2 = true;
-            System.out.println("Modo Salvamento: Estimando nível baixo pela baixa saída de vapor (" + saidaVapor + "L/s)");
-        } else if (saidaVapor > 75) { // Muito vapor pode indicar muita água
+        if (saidaVapor() < 50) { // Pouco vapor pode indicar pouca água
+            if (funcionaBomba1()) ligadaBomba1 = true;
+            if (funcionaBomba2()) ligadaBomba2 = true;
+            evento(RegistroEventos.SALVAMENTO_VAPOR_BAIXO, saidaVapor());
+        } else if (saidaVapor() > 75) { // Muito vapor pode indicar muita água
             ligadaBomba1 = false;
             ligadaBomba2 = false;
-            System.out.println("Modo Salvamento: Estimando nível alto pela alta saída de vapor (" + saidaVapor + "L/s)");
+            evento(RegistroEventos.SALVAMENTO_VAPOR_ALTO, saidaVapor());
         } else {
             // Tenta manter nível com uma bomba funcional
-            if (funcionaBomba1) {
+            if (funcionaBomba1()) {
                 ligadaBomba1 = true;
                 ligadaBomba2 = false;
-            } else if (funcionaBomba2) {
+            } else if (funcionaBomba2()) {
                 ligadaBomba1 = false;
                 ligadaBomba2 = true;
             }
-            System.out.println("Modo Salvamento: Controle conservativo baseado no vapor (" + saidaVapor + "L/s)");
+            evento(RegistroEventos.SALVAMENTO_CONSERVATIVO, saidaVapor());
         }
     }
     
+    static void controleBombas_Estimativa() {
+        // Controle pelo nível estimado, com as bombas que funcionam
+        if (nivelEstimado() < N1) {
+            ligadaBomba1 = funcionaBomba1();
+            ligadaBomba2 = funcionaBomba2();
+        } else if (nivelEstimado() > N2) {
+            ligadaBomba1 = false;
+            ligadaBomba2 = false;
+        } else {
+            // Dentro da faixa normal mantém uma bomba (a 1 tem preferência): o nível desce
+            // devagar em vez de cair com tudo desligado até o próximo ciclo
+            ligadaBomba1 = funcionaBomba1();
+            ligadaBomba2 = !funcionaBomba1() && funcionaBomba2();
+        }
+        evento(RegistroEventos.SALVAMENTO_ESTIMATIVA, nivelEstimado(), incertezaEstimativa(),
+               (ligadaBomba1 ? RegistroEventos.BIT_LIGADA_BOMBA1 : 0) | (ligadaBomba2 ? RegistroEventos.BIT_LIGADA_BOMBA2 : 0));
+    }
+    
     static void atualizaSistemaFisico() {
-        // Calcula entrada de água
-        int entradaAgua = 0;
-        if (ligadaBomba1 && funcionaBomba1) entradaAgua += P;
-        if (ligadaBomba2 && funcionaBomba2) entradaAgua += P;
-        
-        int saidaAgua = saidaVapor;
-        int nivelAntigoAgua = nivelAgua;
-        
-        // Atualizar nível de água
-        nivelAgua += entradaAgua - saidaAgua;
-        
-        // Limitar aos valores físicos possíveis
-        if (nivelAgua < 0) nivelAgua = 0;
-        if (nivelAgua > C) nivelAgua = C;
+        long anterior, atualizado;
+        int entradaAgua, saidaAgua, nivelAntigoAgua, nivel, nivelAntigoVapor, vapor;
+        do {
+            anterior = estado.get();
+            
+            // Calcula entrada de água
+            entradaAgua = 0;
+            if (EstadoCaldeira.tem(anterior, EstadoCaldeira.LIGADA_BOMBA1)
+                    && EstadoCaldeira.tem(anterior, EstadoCaldeira.FUNCIONA_BOMBA1)) entradaAgua += P;
+            if (EstadoCaldeira.tem(anterior, EstadoCaldeira.LIGADA_BOMBA2)
+                    && EstadoCaldeira.tem(anterior, EstadoCaldeira.FUNCIONA_BOMBA2)) entradaAgua += P;
+            
+            saidaAgua = EstadoCaldeira.vapor(anterior);
+            nivelAntigoAgua = EstadoCaldeira.nivel(anterior);
+            
+            // Atualizar nível de água
+            nivel = nivelAntigoAgua + entradaAgua - saidaAgua;
+            
+            // Limitar aos valores físicos possíveis
+            if (nivel < 0) nivel = 0;
+            if (nivel > C) nivel = C;
+            
+            // Simular variação no vapor baseada no nível de água
+            nivelAntigoVapor = saidaAgua;
+            if (nivel < 200) vapor = 40; // Pouca água = pouco vapor
+            else if (nivel > 800) vapor = 80; // Muita água = muito vapor
+            else vapor = V; // Vapor normal
+            
+            // Observador: acompanha a leitura do sensor ou integra a vazão quando ele falha
+            int observado = ObservadorNivel.passo(EstadoCaldeira.estimativa(anterior), EstadoCaldeira.incerteza(anterior),
+                                                  entradaAgua, saidaAgua,
+                                                  EstadoCaldeira.tem(anterior, EstadoCaldeira.FUNCIONA_SENSOR_AGUA),
+                                                  EstadoCaldeira.tem(anterior, EstadoCaldeira.FUNCIONA_SENSOR_VAPOR), nivel);
+            atualizado = EstadoCaldeira.comEstimativa(EstadoCaldeira.comFisica(anterior, nivel, vapor),
+                                                      ObservadorNivel.estimativa(observado),
+                                                      ObservadorNivel.incerteza(observado));
+            // Se o controle mudou bombas ou falhas no meio do cálculo, refaz com o estado novo
+        } while (!estado.compareAndSet(anterior, atualizado));
         
-        // Simular variação no vapor baseada no nível de água
-        int nivelAntigoVapor = saidaVapor;
-        if (nivelAgua < 200) saidaVapor = 40; // Pouca água = pouco vapor
-        else if (nivelAgua > 800) saidaVapor = 80; // Muita água = muito vapor
-        else saidaVapor = V; // Vapor normal
+        if (telemetria != null) telemetria.registra(Relogio.agoraNs(), atualizado, atualModo.ordinal());
+        if (metricas != null) metricas.registraPasso(Relogio.agoraNs(), atualizado);
         
         // Exibe mudanças significativas no sistema
-        if (Math.abs(nivelAntigoAgua - nivelAgua) > 0 || nivelAntigoVapor != saidaVapor) {
-            AbsoluteTime t = Clock.getRealtimeClock().getTime();
-            System.out.println("[FÍSICA " + (t.getMilliseconds() % 100000) + "ms] " +
-                              "Água: " + nivelAntigoAgua + "→" + nivelAgua + "L " +
-                              "(+" + entradaAgua + " -" + saidaAgua + ") | " +
-                              "Vapor: " + nivelAntigoVapor + "→" + saidaVapor + "L/s");
+        if (Math.abs(nivelAntigoAgua - nivel) > 0 || nivelAntigoVapor != vapor) {
+            evento(RegistroEventos.FISICA,
+                   nivelAntigoAgua << 16 | nivel,
+                   entradaAgua << 16 | saidaAgua,
+                   nivelAntigoVapor << 16 | vapor);
+        }
+        
+        verificaCruzamento(anterior, atualizado);
+    }
+    
+    // O nível visto pelo controle entrou em uma faixa mais perto de M1 ou M2: pede uma decisão agora
+    static void verificaCruzamento(long anterior, long atualizado) {
+        if (cruzamento == null) return;
+        int faixaAnterior = faixaCruzamento(nivelVisto(anterior));
+        int faixaNova = faixaCruzamento(nivelVisto(atualizado));
+        if (agrava(faixaAnterior, faixaNova)) {
+            evento(RegistroEventos.CRUZAMENTO_FAIXA, faixaAnterior, faixaNova, nivelVisto(atualizado));
+            instanteCruzamento = Relogio.agoraNs();
+            cruzamento.dispara();
         }
     }
     
+    /**
+     * Leitura de sensores recebida de fora (GatewaySensores) no lugar de um passo de
+     * física: publica o nível, o vapor e a saúde dos componentes (bits 0-3 = bomba 1,
+     * bomba 2, sensor de água e sensor de vapor funcionando) no estado compartilhado,
+     * com o passo do observador, a telemetria e a decisão por cruzamento de faixa. As
+     * bombas ligadas continuam sendo as decididas pelo controle.
+     */
+    static void aplicaLeitura(int nivel, int vapor, int saude) {
+        long anterior, atualizado;
+        do {
+            anterior = estado.get();
+            int entradaAgua = 0;
+            if (EstadoCaldeira.tem(anterior, EstadoCaldeira.LIGADA_BOMBA1)
+                    && EstadoCaldeira.tem(anterior, EstadoCaldeira.FUNCIONA_BOMBA1)) entradaAgua += P;
+            if (EstadoCaldeira.tem(anterior, EstadoCaldeira.LIGADA_BOMBA2)
+                    && EstadoCaldeira.tem(anterior, EstadoCaldeira.FUNCIONA_BOMBA2)) entradaAgua += P;
+            long lido = EstadoCaldeira.comSaude(EstadoCaldeira.comFisica(anterior, nivel, vapor), saude);
+            // Com o sensor de água informado como falho, o observador integra a vazão (um
+            // passo por leitura, então a fonte deve mandar uma leitura por segundo)
+            int observado = ObservadorNivel.passo(EstadoCaldeira.estimativa(anterior), EstadoCaldeira.incerteza(anterior),
+                                                  entradaAgua, vapor,
+                                                  EstadoCaldeira.tem(lido, EstadoCaldeira.FUNCIONA_SENSOR_AGUA),
+                                                  EstadoCaldeira.tem(lido, EstadoCaldeira.FUNCIONA_SENSOR_VAPOR), nivel);
+            atualizado = EstadoCaldeira.comEstimativa(lido, ObservadorNivel.estimativa(observado),
+                                                      ObservadorNivel.incerteza(observado));
+        } while (!estado.compareAndSet(anterior, atualizado));
+        
+        if (telemetria != null) telemetria.registra(Relogio.agoraNs(), atualizado, atualModo.ordinal());
+        if (metricas != null) metricas.registraPasso(Relogio.agoraNs(), atualizado);
+        verificaCruzamento(anterior, atualizado);
+    }
+    
+    // Nível que o controle enxerga: o do sensor, ou a estimativa quando o sensor de água falha
+    static int nivelVisto(long s) {
+        return EstadoCaldeira.tem(s, EstadoCaldeira.FUNCIONA_SENSOR_AGUA) ? EstadoCaldeira.nivel(s)
+                                                                          : EstadoCaldeira.estimativa(s);
+    }
+    
+    // Faixa do nível: 0 = até M1, 1 = entre M1 e N1, 2 = normal (N1 a N2), 3 = entre N2 e M2, 4 = M2 ou mais
+    static int faixaNivel(int nivel) {
+        if (nivel <= M1) return 0;
+        if (nivel < N1) return 1;
+        if (nivel <= N2) return 2;
+        if (nivel < M2) return 3;
+        return 4;
+    }
+    
+    // Folga de histerese da decisão por cruzamento: o nível só sai da faixa normal quando
+    // passa de N1 ou N2 por mais que isso, então oscilações em torno de N1/N2 não disparam
+    static final int MARGEM_CRUZAMENTO = 50;
+    
+    // Faixa do nível para a decisão por cruzamento: a de faixaNivel, com a faixa normal
+    // alargada de MARGEM_CRUZAMENTO para os dois lados
+    static int faixaCruzamento(int nivel) {
+        if (nivel <= M1) return 0;
+        if (nivel < N1 - MARGEM_CRUZAMENTO) return 1;
+        if (nivel <= N2 + MARGEM_CRUZAMENTO) return 2;
+        if (nivel < M2) return 3;
+        return 4;
+    }
+    
+    // Nomes das faixas de faixaCruzamento, para o registro de eventos
+    static final String[] NOMES_FAIXA_CRUZAMENTO = {
+        "<= M1", "M1 - N1-" + MARGEM_CRUZAMENTO, "N1-" + MARGEM_CRUZAMENTO + " - N2+" + MARGEM_CRUZAMENTO,
+        "N2+" + MARGEM_CRUZAMENTO + " - M2", ">= M2"
+    };
+    
+    // Se a faixa nova está mais longe da normal que a anterior. Voltar para perto do normal
+    // não dispara: o ciclo periódico cuida disso
+    static boolean agrava(int faixaAnterior, int faixaNova) {
+        return Math.abs(faixaNova - 2) > Math.abs(faixaAnterior - 2);
+    }
+    
     static void mostraEstadoFisico() {
-        System.out.println("Status: Água=" + nivelAgua + "L, Vapor=" + saidaVapor + "L/s");
-        System.out.println("Bombas: Bomba1=" + (ligadaBomba1 ? "LIGADA" : "DESLIGADA") + 
-                          " Bomba2=" + (ligadaBomba2 ? "LIGADA" : "DESLIGADA"));
-        System.out.println("Funcionamento: |Bomba1=" + funcionaBomba1 + "|" + 
-                          " |Bomba2=" + funcionaBomba2 + "|" +
-                          " |SensorÁgua=" + funcionaSensorAgua + "|" + 
-                          " |SensorVapor=" + funcionaSensorVapor + "|");
+        long s = estado.get();
+        int bits = (EstadoCaldeira.tem(s, EstadoCaldeira.LIGADA_BOMBA1) ? RegistroEventos.BIT_LIGADA_BOMBA1 : 0)
+                 | (EstadoCaldeira.tem(s, EstadoCaldeira.LIGADA_BOMBA2) ? RegistroEventos.BIT_LIGADA_BOMBA2 : 0)
+                 | (EstadoCaldeira.tem(s, EstadoCaldeira.FUNCIONA_BOMBA1) ? RegistroEventos.BIT_FUNCIONA_BOMBA1 : 0)
+                 | (EstadoCaldeira.tem(s, EstadoCaldeira.FUNCIONA_BOMBA2) ? RegistroEventos.BIT_FUNCIONA_BOMBA2 : 0)
+                 | (EstadoCaldeira.tem(s, EstadoCaldeira.FUNCIONA_SENSOR_AGUA) ? RegistroEventos.BIT_FUNCIONA_SENSOR_AGUA : 0)
+                 | (EstadoCaldeira.tem(s, EstadoCaldeira.FUNCIONA_SENSOR_VAPOR) ? RegistroEventos.BIT_FUNCIONA_SENSOR_VAPOR : 0);
+        evento(RegistroEventos.ESTADO, EstadoCaldeira.nivel(s), EstadoCaldeira.vapor(s), bits);
     }
 }
\ No newline at end of file
@@ -0,0 +1,394 @@
+/**
+ * Motor de decisão por tabela: as entradas de logicaControle são reduzidas a uma chave
+ * compacta (modo, faixa de nível, entrada do modo salvamento, falhas e bombas ligadas, e os dois
+ * contadores de transição saturados no último valor que muda a decisão, e se a decisão é a do
+ * ciclo periódico, a única que avança os contadores) que indexa uma
+ * tabela com o próximo modo, os comandos das bombas e o que fazer com cada contador.
+ * Cada decisão custa a mesma coisa, qualquer que seja o caminho do switch original: a
+ * chave e a aplicação da entrada são só aritmética e leituras de arrays, sem desvios
+ * (além das verificações de limite dos arrays, que nunca falham).
+ *
+ * A tabela não é escrita à mão: é gerada rodando a lógica de controle de uma
+ * FrotaCaldeiras própria, de uma caldeira, uma vez para um representante de cada chave.
+ * A geração não toca em nenhum estado estático, então a classe pode ser carregada a
+ * qualquer momento. verifica() confere o resultado contra a lógica original,
+ * SteamBoilerControl.logicaControle, para todos os níveis de 0 a C, e verificaFrota()
+ * confere o caminho por tabela da frota contra o switch da frota.
+ */
+public class TabelaDecisao {
+
+    static final SteamBoilerControl.Mode[] MODOS = SteamBoilerControl.Mode.values();
+
+    // Início de cada faixa de nível: os limites de todas as comparações de logicaControle
+    // (M1, M1 + 50, N1, (N1 + N2) / 2, N2, M2 - 50, M2). M1 + 20 e M2 - 20 só são
+    // comparados com níveis fora do intervalo em que mudariam o resultado
+    static final int[] INICIO_FAIXA_NIVEL = {
+        0, SteamBoilerControl.M1 + 1, SteamBoilerControl.M1 + 51, SteamBoilerControl.N1,
+        (SteamBoilerControl.N1 + SteamBoilerControl.N2) / 2, SteamBoilerControl.N2 + 1,
+        SteamBoilerControl.M2 - 50, SteamBoilerControl.M2
+    };
+    // O modo salvamento decide pela faixa do nível estimado, quando a estimativa é confiável,
+    // ou pela faixa de vapor (limites 50 e 75), quando não é: as duas formam uma só dimensão
+    static final int[] INICIO_FAIXA_ESTIMATIVA = { 0, SteamBoilerControl.N1, SteamBoilerControl.N2 + 1 };
+    static final int[] INICIO_FAIXA_VAPOR = { 0, 50, 76 };
+    static final int[] VAPOR_REPRESENTANTE = { 40, SteamBoilerControl.V, 80 };
+
+    static final int FAIXAS_NIVEL = INICIO_FAIXA_NIVEL.length;
+    static final int FAIXAS_ESTIMATIVA = INICIO_FAIXA_ESTIMATIVA.length;
+    static final int FAIXAS_VAPOR = INICIO_FAIXA_VAPOR.length;
+    static final int CLASSES_SALVAMENTO = FAIXAS_ESTIMATIVA + FAIXAS_VAPOR;
+    static final int COMPONENTES = 64;   // 4 falhas e 2 bombas ligadas, como em EstadoCaldeira
+    // Os contadores são comparados com 3 e com 2 depois do incremento, que a decisão por
+    // cruzamento não faz, então o próprio limite também é uma classe
+    static final int CLASSES_ESTABILIZACAO = 4; // 0, 1, 2, 3 ou mais
+    static final int CLASSES_EMERGENCIA = 3;    // 0, 1, 2 ou mais
+    static final int CLASSES_CICLO = 2;         // decisão por cruzamento de faixa ou periódica
+    static final int CICLO_CRUZAMENTO = 0;
+    static final int CICLO_PERIODICO = 1;
+    static final int TAMANHO = MODOS.length * FAIXAS_NIVEL * CLASSES_SALVAMENTO * COMPONENTES
+                             * CLASSES_ESTABILIZACAO * CLASSES_EMERGENCIA * CLASSES_CICLO;
+
+    // Faixa de cada valor possível de nível, estimativa e vapor (12 bits em EstadoCaldeira)
+    static final byte[] FAIXA_NIVEL = faixas(INICIO_FAIXA_NIVEL);
+    static final byte[] FAIXA_ESTIMATIVA = faixas(INICIO_FAIXA_ESTIMATIVA);
+    static final byte[] FAIXA_VAPOR = faixas(INICIO_FAIXA_VAPOR);
+
+    // Formato de cada entrada da tabela
+    static final int MASCARA_MODO = 0x7;
+    static final int LIGADA_BOMBA1 = 1 << 3;
+    static final int LIGADA_BOMBA2 = 1 << 4;
+    static final int DESLOCAMENTO_ESTABILIZACAO = 5;
+    static final int DESLOCAMENTO_EMERGENCIA = 7;
+    // Operação sobre um contador (2 bits): manter, incrementar ou zerar
+    static final int MANTEM = 0;
+    static final int INCREMENTA = 1;
+    static final int ZERA = 2;
+
+    static final short[] TABELA = gera();
+
+    /** Força a geração da tabela (na carga da classe), antes de as threads usarem a caldeira. */
+    static int carrega() {
+        return TABELA.length;
+    }
+
+    static byte[] faixas(int[] inicios) {
+        byte[] faixa = new byte[EstadoCaldeira.MASCARA_VALOR + 1];
+        for (int valor = 0, f = 0; valor < faixa.length; valor++) {
+            while (f + 1 < inicios.length && valor >= inicios[f + 1]) f++;
+            faixa[valor] = (byte) f;
+        }
+        return faixa;
+    }
+
+    // Faixa do nível estimado, quando a estimativa é confiável, ou a de vapor, quando não é.
+    // Sem desvios: naoConfiavel é o bit de sinal de LIMITE_INCERTEZA - incerteza
+    static int classeSalvamento(int vapor, int estimativa, int incerteza) {
+        int naoConfiavel = (ObservadorNivel.LIMITE_INCERTEZA - incerteza) >>> 31;
+        int porEstimativa = FAIXA_ESTIMATIVA[estimativa];
+        return porEstimativa + naoConfiavel * (FAIXAS_ESTIMATIVA + FAIXA_VAPOR[vapor] - porEstimativa);
+    }
+
+    // min(contador, limite) sem desvios, para contadores e limites pequenos e não negativos
+    static int satura(int contador, int limite) {
+        int diferenca = contador - limite;
+        return limite + (diferenca & (diferenca >> 31));
+    }
+
+    static int chave(int modo, int nivel, int vapor, int estimativa, int incerteza, int componentes,
+                     int estabilizacao, int emergencia, int ciclo) {
+        return chaveFaixas(modo, FAIXA_NIVEL[nivel], classeSalvamento(vapor, estimativa, incerteza), componentes,
+                           satura(estabilizacao, CLASSES_ESTABILIZACAO - 1),
+                           satura(emergencia, CLASSES_EMERGENCIA - 1), ciclo);
+    }
+
+    static int chaveFaixas(int modo, int faixaNivel, int salvamento, int componentes, int estabilizacao, int emergencia,
+                           int ciclo) {
+        return (((((modo * FAIXAS_NIVEL + faixaNivel) * CLASSES_SALVAMENTO + salvamento) * COMPONENTES + componentes)
+                * CLASSES_ESTABILIZACAO + estabilizacao) * CLASSES_EMERGENCIA + emergencia) * CLASSES_CICLO + ciclo;
+    }
+
+    /**
+     * Entrada da tabela para as entradas dadas (bits de componentes na ordem de EstadoCaldeira;
+     * ciclo é CICLO_PERIODICO ou CICLO_CRUZAMENTO). Sem observador, passe
+     * ObservadorNivel.INCERTEZA_MAXIMA como incerteza.
+     */
+    static int decide(int modo, int nivel, int vapor, int estimativa, int incerteza, int componentes,
+                      int estabilizacao, int emergencia, int ciclo) {
+        return TABELA[chave(modo, nivel, vapor, estimativa, incerteza, componentes, estabilizacao, emergencia, ciclo)];
+    }
+
+    static int modo(int entrada) {
+        return entrada & MASCARA_MODO;
+    }
+
+    /** Novo valor do contador de estabilização segundo a entrada. */
+    static int estabilizacao(int entrada, int contador) {
+        return aplica(entrada >>> DESLOCAMENTO_ESTABILIZACAO, contador);
+    }
+
+    /** Novo valor do contador de emergência segundo a entrada. */
+    static int emergencia(int entrada, int contador) {
+        return aplica(entrada >>> DESLOCAMENTO_EMERGENCIA, contador);
+    }
+
+    // Sem desvios: (contador + incrementa) multiplicado por 0 quando zera
+    static int aplica(int operacao, int contador) {
+        return (contador + (operacao & INCREMENTA)) * (1 - ((operacao & ZERA) >>> 1));
+    }
+
+    static int operacao(int antes, int depois) {
+        if (depois == 0) return ZERA;
+        if (depois == antes + 1) return INCREMENTA;
+        if (depois == antes) return MANTEM;
+        throw new IllegalStateException("Contador mudou de " + antes + " para " + depois);
+    }
+
+    static int entrada(int modo, boolean bomba1, boolean bomba2, int estabilizacaoAntes, int estabilizacao,
+                       int emergenciaAntes, int emergencia) {
+        return modo | (bomba1 ? LIGADA_BOMBA1 : 0) | (bomba2 ? LIGADA_BOMBA2 : 0)
+             | operacao(estabilizacaoAntes, estabilizacao) << DESLOCAMENTO_ESTABILIZACAO
+             | operacao(emergenciaAntes, emergencia) << DESLOCAMENTO_EMERGENCIA;
+    }
+
+    /**
+     * Roda a lógica de controle da caldeira 0 de uma frota própria (usaObservador ligado, as
+     * duas formas do modo salvamento vêm da incerteza) e devolve o resultado no formato da tabela.
+     */
+    static int gerada(FrotaCaldeiras frota, int modo, int nivel, int vapor, int estimativa, int incerteza,
+                      int componentes, int estabilizacao, int emergencia, int ciclo) {
+        preenche(frota, modo, nivel, vapor, estimativa, incerteza, componentes, estabilizacao, emergencia);
+        frota.logicaControle(0, ciclo == CICLO_PERIODICO);
+        return resultado(frota, estabilizacao, emergencia);
+    }
+
+    /** Põe as entradas de uma decisão na caldeira 0 da frota. */
+    static void preenche(FrotaCaldeiras frota, int modo, int nivel, int vapor, int estimativa, int incerteza,
+                         int componentes, int estabilizacao, int emergencia) {
+        frota.nivelAgua[0] = nivel;
+        frota.saidaVapor[0] = vapor;
+        frota.nivelEstimado[0] = estimativa;
+        frota.incertezaEstimativa[0] = incerteza;
+        frota.funcionaBomba1[0] = (componentes & 1) != 0;
+        frota.funcionaBomba2[0] = (componentes & 2) != 0;
+        frota.funcionaSensorAgua[0] = (componentes & 4) != 0;
+        frota.funcionaSensorVapor[0] = (componentes & 8) != 0;
+        frota.ligadaBomba1[0] = (componentes & 16) != 0;
+        frota.ligadaBomba2[0] = (componentes & 32) != 0;
+        frota.atualModo[0] = (byte) modo;
+        frota.ciclosEstabilizacao[0] = estabilizacao;
+        frota.ciclosModoEmergencia[0] = emergencia;
+    }
+
+    /** A decisão tomada na caldeira 0 da frota, no formato da tabela. */
+    static int resultado(FrotaCaldeiras frota, int estabilizacao, int emergencia) {
+        return entrada(frota.atualModo[0], frota.ligadaBomba1[0], frota.ligadaBomba2[0],
+                       estabilizacao, frota.ciclosEstabilizacao[0], emergencia, frota.ciclosModoEmergencia[0]);
+    }
+
+    /** Roda a lógica original, com o estado estático de SteamBoilerControl, e devolve o resultado no formato da tabela. */
+    static int referencia(int modo, int nivel, int vapor, int estimativa, int incerteza, int componentes,
+                          int estabilizacao, int emergencia, int ciclo) {
+        SteamBoilerControl.estado.set(EstadoCaldeira.comEstimativa(EstadoCaldeira.empacota(nivel, vapor,
+                                      (long) componentes << EstadoCaldeira.DESLOCAMENTO_COMPONENTES), estimativa, incerteza));
+        SteamBoilerControl.atualModo = MODOS[modo];
+        SteamBoilerControl.ciclosEstabilizacao = estabilizacao;
+        SteamBoilerControl.ciclosModoEmergencia = emergencia;
+        SteamBoilerControl.logicaControle(ciclo == CICLO_PERIODICO);
+        long depois = SteamBoilerControl.estado.get();
+        return entrada(SteamBoilerControl.atualModo.ordinal(),
+                       EstadoCaldeira.tem(depois, EstadoCaldeira.LIGADA_BOMBA1),
+                       EstadoCaldeira.tem(depois, EstadoCaldeira.LIGADA_BOMBA2),
+                       estabilizacao, SteamBoilerControl.ciclosEstabilizacao,
+                       emergencia, SteamBoilerControl.ciclosModoEmergencia);
+    }
+
+    static short[] gera() {
+        short[] tabela = new short[TAMANHO];
+        FrotaCaldeiras frota = new FrotaCaldeiras(1);
+        frota.usaObservador = true; // a tabela cobre as duas formas do modo salvamento
+        for (int modo = 0; modo < MODOS.length; modo++) {
+            for (int fn = 0; fn < FAIXAS_NIVEL; fn++) {
+                for (int sv = 0; sv < CLASSES_SALVAMENTO; sv++) {
+                    // Representante da classe: estimativa confiável em uma faixa, ou só o vapor
+                    boolean porEstimativa = sv < FAIXAS_ESTIMATIVA;
+                    int estimativa = porEstimativa ? INICIO_FAIXA_ESTIMATIVA[sv] : INICIO_FAIXA_NIVEL[fn];
+                    int incerteza = porEstimativa ? 0 : ObservadorNivel.INCERTEZA_MAXIMA;
+                    int vapor = porEstimativa ? SteamBoilerControl.V : VAPOR_REPRESENTANTE[sv - FAIXAS_ESTIMATIVA];
+                    for (int comp = 0; comp < COMPONENTES; comp++) {
+                        for (int est = 0; est < CLASSES_ESTABILIZACAO; est++) {
+                            for (int emg = 0; emg < CLASSES_EMERGENCIA; emg++) {
+                                for (int ciclo = 0; ciclo < CLASSES_CICLO; ciclo++) {
+                                    tabela[chaveFaixas(modo, fn, sv, comp, est, emg, ciclo)] = (short)
+                                        gerada(frota, modo, INICIO_FAIXA_NIVEL[fn], vapor, estimativa, incerteza, comp,
+                                               est, emg, ciclo);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return tabela;
+    }
+
+    // Vapores e estimativas ({ estimativa, incerteza }) nos dois lados de cada limite
+    static final int[] VAPORES_VERIFICADOS = { 0, 40, 49, 50, SteamBoilerControl.V, 75, 76, 80, SteamBoilerControl.C };
+    static final int[][] ESTIMATIVAS_VERIFICADAS = {
+        { SteamBoilerControl.N1 - 1, 0 }, { SteamBoilerControl.N1, 0 }, { (SteamBoilerControl.N1 + SteamBoilerControl.N2) / 2, 0 },
+        { SteamBoilerControl.N2, 0 }, { SteamBoilerControl.N2 + 1, 0 },
+        { SteamBoilerControl.N1 - 1, ObservadorNivel.LIMITE_INCERTEZA }, { SteamBoilerControl.N2 + 1, ObservadorNivel.LIMITE_INCERTEZA },
+        { SteamBoilerControl.N1 - 1, ObservadorNivel.LIMITE_INCERTEZA + 1 },
+        { SteamBoilerControl.N2 + 1, ObservadorNivel.INCERTEZA_MAXIMA },
+    };
+
+    /**
+     * Confere a tabela contra a lógica original para todos os níveis de 0 a C, vapores e
+     * estimativas nos dois lados de cada limite (com incerteza zero, no limite e acima dele),
+     * todos os modos, falhas, bombas ligadas, contadores de estabilização de 0 a 4 e de
+     * emergência de 0 a 3, em decisões periódicas e por cruzamento. Devolve o número de divergências.
+     */
+    static long verifica() {
+        final int[] vapores = VAPORES_VERIFICADOS;
+        final int[][] estimativas = ESTIMATIVAS_VERIFICADAS;
+        long combinacoes = 0;
+        long divergencias = 0;
+        EstadoSalvo salvo = new EstadoSalvo();
+        long t0 = System.nanoTime();
+        try {
+            for (int modo = 0; modo < MODOS.length; modo++) {
+                for (int nivel = 0; nivel <= SteamBoilerControl.C; nivel++) {
+                    for (int vapor : vapores) {
+                        for (int[] estimativa : estimativas) {
+                            int est0 = estimativa[0];
+                            int inc0 = estimativa[1];
+                            for (int comp = 0; comp < COMPONENTES; comp++) {
+                                for (int est = 0; est <= 4; est++) {
+                                    // Emergência de 0 a 3, cada uma em decisão por cruzamento e periódica
+                                    for (int caso = 0; caso < 4 * CLASSES_CICLO; caso++) {
+                                        int emg = caso / CLASSES_CICLO;
+                                        int ciclo = caso % CLASSES_CICLO;
+                                        referencia(modo, nivel, vapor, est0, inc0, comp, est, emg, ciclo);
+                                        int entrada = decide(modo, nivel, vapor, est0, inc0, comp, est, emg, ciclo);
+                                        long depois = SteamBoilerControl.estado.get();
+                                        boolean igual = modo(entrada) == SteamBoilerControl.atualModo.ordinal()
+                                            && ((entrada & LIGADA_BOMBA1) != 0) == EstadoCaldeira.tem(depois, EstadoCaldeira.LIGADA_BOMBA1)
+                                            && ((entrada & LIGADA_BOMBA2) != 0) == EstadoCaldeira.tem(depois, EstadoCaldeira.LIGADA_BOMBA2)
+                                            && estabilizacao(entrada, est) == SteamBoilerControl.ciclosEstabilizacao
+                                            && emergencia(entrada, emg) == SteamBoilerControl.ciclosModoEmergencia;
+                                        if (!igual) {
+                                            if (divergencias < 10) {
+                                                System.out.println("Divergência: modo=" + MODOS[modo] + " nível=" + nivel +
+                                                                  " vapor=" + vapor + " estimativa=" + est0 + "±" + inc0 +
+                                                                  " componentes=" + comp +
+                                                                  " estabilização=" + est + " emergência=" + emg +
+                                                                  (ciclo == CICLO_PERIODICO ? "" : " (cruzamento)"));
+                                            }
+                                            divergencias++;
+                                        }
+                                        combinacoes++;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            salvo.restaura();
+        }
+        System.out.printf("TABELA DE DECISÃO: %d entradas (%d bytes), %d combinações verificadas em %.1fs, %d divergências%n",
+                          TAMANHO, TAMANHO * 2, combinacoes, (System.nanoTime() - t0) / 1e9, divergencias);
+        return divergencias;
+    }
+
+    /**
+     * Confere o caminho por tabela da frota, FrotaCaldeiras.logicaControleTabela, contra o
+     * switch da frota, FrotaCaldeiras.logicaControle, nas mesmas combinações de verifica()
+     * (só decisões periódicas, as únicas que a frota toma pela tabela), com o observador
+     * ligado e desligado. Cada caminho roda em uma frota própria de uma caldeira, sem tocar
+     * no estado estático. Devolve o número de divergências.
+     */
+    static long verificaFrota() {
+        FrotaCaldeiras porSwitch = new FrotaCaldeiras(1);
+        FrotaCaldeiras porTabela = new FrotaCaldeiras(1);
+        long combinacoes = 0;
+        long divergencias = 0;
+        long t0 = System.nanoTime();
+        for (int observador = 0; observador < 2; observador++) {
+            porSwitch.usaObservador = observador == 1;
+            porTabela.usaObservador = observador == 1;
+            for (int modo = 0; modo < MODOS.length; modo++) {
+                for (int nivel = 0; nivel <= SteamBoilerControl.C; nivel++) {
+                    for (int vapor : VAPORES_VERIFICADOS) {
+                        for (int[] estimativa : ESTIMATIVAS_VERIFICADAS) {
+                            for (int comp = 0; comp < COMPONENTES; comp++) {
+                                for (int est = 0; est <= 4; est++) {
+                                    for (int emg = 0; emg <= 3; emg++) {
+                                        preenche(porSwitch, modo, nivel, vapor, estimativa[0], estimativa[1], comp, est, emg);
+                                        porSwitch.logicaControle(0);
+                                        preenche(porTabela, modo, nivel, vapor, estimativa[0], estimativa[1], comp, est, emg);
+                                        porTabela.logicaControleTabela(0, 1);
+                                        if (resultado(porSwitch, est, emg) != resultado(porTabela, est, emg)) {
+                                            if (divergencias < 10) {
+                                                System.out.println("Divergência na frota: modo=" + MODOS[modo] + " nível=" + nivel +
+                                                                  " vapor=" + vapor + " estimativa=" + estimativa[0] + "±" +
+                                                                  estimativa[1] + " componentes=" + comp + " estabilização=" + est +
+                                                                  " emergência=" + emg + (observador == 1 ? "" : " (sem observador)"));
+                                            }
+                                            divergencias++;
+                                        }
+                                        combinacoes++;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        System.out.printf("TABELA DE DECISÃO NA FROTA: %d combinações verificadas em %.1fs, %d divergências%n",
+                          combinacoes, (System.nanoTime() - t0) / 1e9, divergencias);
+        return divergencias;
+    }
+
+    /**
+     * Guarda o estado da caldeira estática, o registro de eventos e todos os ganchos de
+     * logicaControle (gravação, métricas, telemetria e evento de cruzamento), desligados
+     * enquanto a lógica é exercitada com entradas sintéticas.
+     */
+    static class EstadoSalvo {
+        final long estado = SteamBoilerControl.estado.get();
+        final SteamBoilerControl.Mode modo = SteamBoilerControl.atualModo;
+        final int estabilizacao = SteamBoilerControl.ciclosEstabilizacao;
+        final int emergencia = SteamBoilerControl.ciclosModoEmergencia;
+        final boolean eventos = RegistroEventos.habilitado;
+        final boolean observador = SteamBoilerControl.usaObservador;
+        final GravacaoControle gravacao = SteamBoilerControl.gravacao;
+        final MetricasCaldeira metricas = SteamBoilerControl.metricas;
+        final TelemetriaMapeada telemetria = SteamBoilerControl.telemetria;
+        final EventoAssincrono cruzamento = SteamBoilerControl.cruzamento;
+
+        EstadoSalvo() {
+            RegistroEventos.habilitado = false;
+            SteamBoilerControl.usaObservador = true; // a tabela cobre as duas formas do modo salvamento
+            SteamBoilerControl.gravacao = null;
+            SteamBoilerControl.metricas = null;
+            SteamBoilerControl.telemetria = null;
+            SteamBoilerControl.cruzamento = null;
+        }
+
+        void restaura() {
+            SteamBoilerControl.gravacao = gravacao;
+            SteamBoilerControl.metricas = metricas;
+            SteamBoilerControl.telemetria = telemetria;
+            SteamBoilerControl.cruzamento = cruzamento;
+            SteamBoilerControl.estado.set(estado);
+            SteamBoilerControl.atualModo = modo;
+            SteamBoilerControl.ciclosEstabilizacao = estabilizacao;
+            SteamBoilerControl.ciclosModoEmergencia = emergencia;
+            SteamBoilerControl.carregaEstado();
+            RegistroEventos.habilitado = eventos;
+            SteamBoilerControl.usaObservador = observador;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Uma thread periódica descrita sem dizer como ela é liberada: nome, prioridade,
+ * período, custo previsto, número de liberações e o trabalho de cada liberação. Quem
+ * cria a thread e a libera é um ExecutorPeriodico (RTSJ ou JVM padrão), que também
+ * cria a instrumentação com o instante de início comum; a instrumentação é a mesma
+ * nos dois, então os números de atraso e de tempo de execução são comparáveis.
+ */
+public abstract class TarefaPeriodica {
+
+    final String nome;
+    final int prioridade;    // acima da menor prioridade do escalonador
+    final long periodoNs;    // o prazo de cada liberação é o fim do período
+    final long custoNs;      // orçamento de CPU por liberação
+    final int liberacoes;
+
+    InstrumentacaoPeriodica instrumentacao; // criada pelo executor antes de iniciar as threads
+
+    TarefaPeriodica(String nome, int prioridade, long periodoNs, long custoNs, int liberacoes) {
+        this.nome = nome;
+        this.prioridade = prioridade;
+        this.periodoNs = periodoNs;
+        this.custoNs = custoNs;
+        this.liberacoes = liberacoes;
+    }
+
+    /** Chamado na thread da tarefa antes da primeira liberação. */
+    void inicio() {
+    }
+
+    /** O trabalho da liberação de número `liberacao` (a partir de 1). */
+    abstract void liberacao(int liberacao);
+
+    /** Chamado na thread da tarefa depois da última liberação. */
+    void fim() {
+    }
+}
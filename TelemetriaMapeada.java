@@ -0,0 +1,46 @@
+import java.io.IOException;
+
+/**
+ * Gravador de telemetria: um registro binário de tamanho fixo por passo de física,
+ * escrito direto em um arquivo mapeado em memória (ver ArquivoRegistros). Gravar um
+ * registro são duas escritas em posições absolutas do mapeamento (mais a do número de
+ * registros no cabeçalho, uma vez a cada ArquivoRegistros.REGISTROS_POR_PUBLICACAO), sem
+ * alocação, sem chamada de sistema e sem formatação; o sistema operacional leva as
+ * páginas para o disco.
+ *
+ * Registro, 16 bytes (little-endian): instante em ns (8), nível (2), vapor (2),
+ * bombas e sensores nos bits de EstadoCaldeira.componentes (1), modo (1), nível
+ * estimado (2). LeitorTelemetria lê o formato.
+ */
+public class TelemetriaMapeada extends ArquivoRegistros {
+
+    static final long MAGICO = 0x314C4554444C4143L; // "CALDTEL1" em little-endian
+    static final int VERSAO = 1;
+    static final int TAMANHO_REGISTRO = 16;
+
+    // Posições dentro de cada registro
+    static final int POS_TEMPO = 0;
+    static final int POS_NIVEL = 8;
+    static final int POS_VAPOR = 10;
+    static final int POS_COMPONENTES = 12;
+    static final int POS_MODO = 13;
+    static final int POS_ESTIMATIVA = 14;
+
+    TelemetriaMapeada(String caminho) throws IOException {
+        super(caminho, MAGICO, VERSAO, TAMANHO_REGISTRO);
+    }
+
+    /** Grava um passo: o instante e o estado empacotado (EstadoCaldeira) depois do passo. */
+    void registra(long tempoNs, long estado, int modo) {
+        int p = proximo();
+        // Os campos depois do instante formam um long (little-endian): duas escritas por registro
+        long campos = EstadoCaldeira.nivel(estado)
+                    | (long) EstadoCaldeira.vapor(estado) << 16
+                    | (long) EstadoCaldeira.componentes(estado) << 32
+                    | (long) modo << 40
+                    | (long) EstadoCaldeira.estimativa(estado) << 48;
+        trecho.putLong(p + POS_TEMPO, tempoNs);
+        trecho.putLong(p + POS_NIVEL, campos);
+        confirma();
+    }
+}
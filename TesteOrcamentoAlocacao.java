@@ -0,0 +1,65 @@
+/**
+ * Teste do orçamento de alocação, sem dependências: roda com
+ *
+ *   java TesteOrcamentoAlocacao
+ *
+ * e termina com código 1 na primeira verificação que falhar. Verifica a contagem do
+ * orçamento, que a medição por thread enxerga um ciclo que aloca e que o cenário do modo
+ * virtual fica em 0 B por ciclo depois do aquecimento, com e sem as decisões por
+ * cruzamento de faixa, na JVM como ela vier configurada (sem opções de compilação).
+ */
+public class TesteOrcamentoAlocacao {
+
+    static int verificacoes = 0;
+
+    public static void main(String[] args) {
+        orcamentoContaSoOQuePassaDoLimite();
+        if (!OrcamentoAlocacao.disponivel()) {
+            System.out.println("Esta JVM não mede a alocação por thread; testes de medição não rodaram");
+            return;
+        }
+        medicaoEnxergaAlocacao();
+        cenarioNaoAloca(false);
+        cenarioNaoAloca(true);
+        System.out.println(verificacoes + " verificações, todas passaram");
+    }
+
+    static void orcamentoContaSoOQuePassaDoLimite() {
+        OrcamentoAlocacao orcamento = new OrcamentoAlocacao("teste", 16);
+        orcamento.registra(1, 0);
+        orcamento.registra(2, 16);
+        verifica(orcamento.dentroDoOrcamento(), "um ciclo no limite está dentro do orçamento");
+        orcamento.registra(3, 17);
+        verifica(!orcamento.dentroDoOrcamento(), "um ciclo acima do limite passa do orçamento");
+        orcamento.registra(4, 0);
+        verifica(!orcamento.dentroDoOrcamento(), "um ciclo dentro do limite não desfaz o excesso");
+    }
+
+    static Object guardado;
+
+    static void medicaoEnxergaAlocacao() {
+        long custo = OrcamentoAlocacao.custoMedicao();
+        long antes = OrcamentoAlocacao.alocados();
+        guardado = new long[1024];   // escapa pelo campo, então não pode ser eliminado
+        long bytes = OrcamentoAlocacao.alocados() - antes - custo;
+        verifica(bytes >= 1024 * 8, "a medição enxerga um array de 8 KB (mediu " + bytes + " B)");
+        OrcamentoAlocacao orcamento = new OrcamentoAlocacao("teste", 0);
+        orcamento.registra(1, bytes);
+        verifica(!orcamento.dentroDoOrcamento(), "o ciclo que alocou passa do orçamento de 0 B");
+    }
+
+    static void cenarioNaoAloca(boolean evento) {
+        SteamBoilerControl.decisaoPorEvento = evento;
+        verifica(OrcamentoAlocacao.executa(2000, 0),
+                 "o cenário virtual " + (evento ? "com" : "sem") + " decisões por evento aloca 0 B por ciclo");
+    }
+
+    static void verifica(boolean condicao, String descricao) {
+        verificacoes++;
+        if (!condicao) {
+            System.out.println("FALHOU: " + descricao);
+            System.exit(1);
+        }
+        System.out.println("ok: " + descricao);
+    }
+}